@@ -73,8 +73,12 @@ public final class AddMaximum implements LocalCacheRule {
     context.cache.addField(FieldSpec.builder(
         FREQUENCY_SKETCH, "sketch", Modifier.FINAL).build());
     context.constructor.addCode(CodeBlock.builder()
-        .addStatement("this.sketch = new $T()", FREQUENCY_SKETCH)
-        .beginControlFlow("if (builder.hasInitialCapacity())")
+        .addStatement("this.sketch = builder.newFrequencySketch()")
+        .beginControlFlow("if (builder.getRefreshAheadFrequency() != 0)")
+            .add("// Refresh ahead selects by popularity, so the sketch cannot wait to grow\n")
+            .addStatement("this.sketch.ensureCapacity(builder.isWeighted() "
+                + "? builder.getInitialCapacity() : builder.getMaximum())")
+        .nextControlFlow("else if (builder.hasInitialCapacity())")
             .addStatement("long capacity = Math.min($L, $L)",
                 "builder.getMaximum()", "builder.getInitialCapacity()")
             .addStatement("this.sketch.ensureCapacity(capacity)")
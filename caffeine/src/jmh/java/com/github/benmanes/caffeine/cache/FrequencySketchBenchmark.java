@@ -16,8 +16,12 @@
 package com.github.benmanes.caffeine.cache;
 
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
@@ -40,8 +44,9 @@ public class FrequencySketchBenchmark {
   private static final int SIZE = (2 << 14);
   private static final int MASK = SIZE - 1;
   private static final int ITEMS = SIZE / 3;
+  private static final int BATCH = 128;
 
-  @Param({"Flat", "Block"})
+  @Param({"Flat", "Block", "Incremental"})
   SketchType sketchType;
 
   @Param({"32768", "524288", "8388608", "134217728"})
@@ -79,4 +84,18 @@ public class FrequencySketchBenchmark {
   public void reset() {
     sketch.reset();
   }
+
+  /**
+   * Records a batch of distinct additions, as when draining the read buffer during a maintenance
+   * cycle. The sampled latency distribution shows the stalls caused by aging the sketch, which a
+   * periodic reset incurs in the upper percentiles and an incremental sweep spreads across batches.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void maintenance() {
+    for (int i = 0; i < BATCH; i++) {
+      sketch.increment(index++);
+    }
+  }
 }
@@ -46,6 +46,25 @@ public enum SketchType {
     @Override public <E> TinyLfuSketch<E> create(long estimatedSize) {
       var frequencySketch = new FrequencySketch<E>();
       frequencySketch.ensureCapacity(estimatedSize);
+      frequencySketch.setIncrementalAging(false);
+      return new TinyLfuSketch<>() {
+        @Override public int frequency(E e) {
+          return frequencySketch.frequency(e);
+        }
+        @Override public void increment(E e) {
+          frequencySketch.increment(e);
+        }
+        @Override public void reset() {
+          frequencySketch.reset();
+        }
+      };
+    }
+  },
+  Incremental {
+    @Override public <E> TinyLfuSketch<E> create(long estimatedSize) {
+      var frequencySketch = new FrequencySketch<E>();
+      frequencySketch.ensureCapacity(estimatedSize);
+      frequencySketch.setIncrementalAging(true);
       return new TinyLfuSketch<>() {
         @Override public int frequency(E e) {
           return frequencySketch.frequency(e);
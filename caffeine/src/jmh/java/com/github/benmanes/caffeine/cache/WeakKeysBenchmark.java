@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * A benchmark of the reads on a cache that holds its keys weakly. The allocation rate per operation
+ * is reported by JMH's GC profiler ({@code -prof gc}), which should be zero for these reads.
+ * <p>
+ * The reads avoid the allocation by reusing a lookup key that is held in a thread-local, which pays
+ * off for the long-lived platform threads that these benchmarks run on, as the lookup key escapes
+ * into the hash table's lookup and so is not removed by escape analysis. A virtual thread does not
+ * reuse the lookup key, because a thread-local map entry and an instance for each short-lived
+ * thread cost more than the single small lookup key that they replace, so its reads allocate once.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@State(Scope.Benchmark)
+@SuppressWarnings({"MemberName", "PMD.MethodNamingConventions"})
+public class WeakKeysBenchmark {
+  static final int SIZE = (2 << 14);
+  static final int MASK = SIZE - 1;
+
+  final Cache<Object, Boolean> cache;
+  final Object[] keys;
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    static final Random random = new Random();
+    int index = random.nextInt();
+  }
+
+  public WeakKeysBenchmark() {
+    keys = new Object[SIZE];
+    cache = Caffeine.newBuilder().weakKeys().build();
+    for (int i = 0; i < SIZE; i++) {
+      keys[i] = new Object();
+      if ((i & 1) == 0) {
+        cache.put(keys[i], Boolean.TRUE);
+      }
+    }
+  }
+
+  @Benchmark @Threads(1)
+  public Boolean getIfPresent_noContention(ThreadState threadState) {
+    return cache.getIfPresent(keys[threadState.index++ & MASK]);
+  }
+
+  @Benchmark @Threads(8)
+  public Boolean getIfPresent_contention(ThreadState threadState) {
+    return cache.getIfPresent(keys[threadState.index++ & MASK]);
+  }
+
+  @Benchmark @Threads(8)
+  public boolean containsKey(ThreadState threadState) {
+    return cache.asMap().containsKey(keys[threadState.index++ & MASK]);
+  }
+}
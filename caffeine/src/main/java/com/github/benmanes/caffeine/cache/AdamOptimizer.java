@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+/**
+ * An Adam optimizer that determines how much to adjust the admission window by after each sample
+ * period. The gradient is estimated as the change in the miss rate relative to the direction of the
+ * previous adjustment, and the step is scaled by the momentum and velocity of that gradient so that
+ * a consistent improvement accelerates while a noisy signal is damped. This class is not
+ * thread-safe and must be guarded by the eviction lock.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class AdamOptimizer {
+  /** The decay rate of the momentum. */
+  static final double BETA_1 = 0.9d;
+  /** The decay rate of the velocity. */
+  static final double BETA_2 = 0.999d;
+  /** The fuzz factor for numerical stability. */
+  static final double EPSILON = 1e-8d;
+
+  double beta1Power;
+  double beta2Power;
+  double direction;
+  double velocity;
+  double moment;
+  boolean primed;
+
+  AdamOptimizer() {
+    reset();
+  }
+
+  /**
+   * Returns the amount to adjust the window by, where a positive value increases the window and a
+   * negative value decreases it.
+   *
+   * @param hitRateChange the change in the hit rate from the previous sample period
+   * @param learningRate the maximum step size for a consistent gradient
+   * @return the amount to adjust the admission window by
+   */
+  public double adjust(double hitRateChange, double learningRate) {
+    if (!primed) {
+      // The first sample has no prior period to compare against, so start by shrinking the window
+      primed = true;
+      direction = -1.0;
+      return -learningRate;
+    }
+
+    double gradient = -hitRateChange * direction;
+    moment = (BETA_1 * moment) + ((1 - BETA_1) * gradient);
+    velocity = (BETA_2 * velocity) + ((1 - BETA_2) * (gradient * gradient));
+    beta1Power *= BETA_1;
+    beta2Power *= BETA_2;
+
+    double momentBias = moment / (1 - beta1Power);
+    double velocityBias = velocity / (1 - beta2Power);
+    double amount = -learningRate * momentBias / (Math.sqrt(velocityBias) + EPSILON);
+    if (amount != 0) {
+      direction = Math.signum(amount);
+    }
+    return amount;
+  }
+
+  /** Discards the history, such as when the maximum size of the cache changes. */
+  public void reset() {
+    beta1Power = 1.0;
+    beta2Power = 1.0;
+    direction = -1.0;
+    velocity = 0.0;
+    moment = 0.0;
+    primed = false;
+  }
+}
@@ -33,8 +33,12 @@ import static java.util.Spliterator.NONNULL;
 import static java.util.Spliterator.ORDERED;
 import static java.util.function.Function.identity;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
@@ -43,10 +47,13 @@ import java.lang.invoke.VarHandle;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.AbstractCollection;
 import java.util.AbstractSet;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -55,6 +62,7 @@ import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
@@ -74,6 +82,7 @@ import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
@@ -89,6 +98,7 @@ import com.github.benmanes.caffeine.cache.Async.AsyncExpiry;
 import com.github.benmanes.caffeine.cache.LinkedDeque.PeekingIterator;
 import com.github.benmanes.caffeine.cache.Policy.CacheEntry;
 import com.github.benmanes.caffeine.cache.References.InternalReference;
+import com.github.benmanes.caffeine.cache.References.ReusableLookupKeyReference;
 import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.Var;
@@ -233,11 +243,22 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
   static final long WARN_AFTER_LOCK_WAIT_NANOS = TimeUnit.SECONDS.toNanos(30);
   /** The number of retries before computing to validate the entry's integrity; pow2 modulus. */
   static final int MAX_PUT_SPIN_WAIT_ATTEMPTS = 1024 - 1;
+  /** The version of the binary format written by a snapshot. */
+  static final int SNAPSHOT_VERSION = 1;
+  /** The number of entries written before resetting the snapshot's stream; pow2 modulus. */
+  static final int SNAPSHOT_CHUNK_MASK = 4096 - 1;
   /** The handle for the in-flight refresh operations. */
   static final VarHandle REFRESHES;
+  /** The weight of a new sample in the moving average of the refresh time; a power of two. */
+  static final int REFRESH_TIME_SAMPLE_WEIGHT = 8;
+  /** The ratio of the time until the refresh to the expected delay that is too unlikely to try. */
+  static final double EARLY_REFRESH_CUTOFF = 32;
+  /** The maximum number of stale entries inspected to refresh ahead per maintenance cycle. */
+  static final int REFRESH_AHEAD_SCAN_LIMIT = 64;
 
   final @Nullable RemovalListener<K, V> evictionListener;
   final @Nullable AsyncCacheLoader<K, V> cacheLoader;
+  final @Nullable AdamOptimizer windowOptimizer;
 
   final MpscGrowableArrayQueue<Runnable> writeBuffer;
   final ConcurrentHashMap<Object, Node<K, V>> data;
@@ -245,17 +266,32 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
   final Consumer<Node<K, V>> accessPolicy;
   final Buffer<Node<K, V>> readBuffer;
   final NodeFactory<K, V> nodeFactory;
+  final AtomicInteger refreshAheadCount;
   final ReentrantLock evictionLock;
+  final Ticker loadPenaltyTicker;
+  final Executor maintenanceExecutor;
+  final double probabilisticRefresh;
   final Weigher<K, V> weigher;
   final Executor executor;
 
+  final int refreshAheadConcurrency;
+  final int refreshAheadFrequency;
+
+  final boolean weightAwareAdmission;
+  final boolean reusesLookupKey;
   final boolean isWeighted;
+  final boolean costAware;
   final boolean isAsync;
 
   @Nullable Set<K> keySet;
   @Nullable Collection<V> values;
   @Nullable Set<Entry<K, V>> entrySet;
+  @GuardedBy("evictionLock")
+  @Nullable Node<K, V> refreshAheadCursor;
+  @GuardedBy("evictionLock")
+  long refreshAheadCursorTime;
   volatile @Nullable ConcurrentMap<Object, CompletableFuture<?>> refreshes;
+  volatile long refreshTimeEstimate;
 
   /** Creates an instance based on the builder's configuration. */
   @SuppressWarnings("GuardedBy")
@@ -264,8 +300,20 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     this.isAsync = isAsync;
     this.cacheLoader = cacheLoader;
     executor = builder.getExecutor();
+    maintenanceExecutor = builder.getMaintenanceExecutor();
+    probabilisticRefresh = builder.getProbabilisticRefreshBeta();
+    refreshAheadConcurrency = builder.getRefreshAheadConcurrency();
+    refreshAheadFrequency = builder.getRefreshAheadFrequency();
+    refreshAheadCount = new AtomicInteger();
     isWeighted = builder.isWeighted();
+    reusesLookupKey = !builder.isStrongKeys() && !builder.interner;
     evictionLock = new ReentrantLock();
+    weightAwareAdmission = builder.isWeightAwareAdmission();
+    loadPenaltyTicker = builder.getLoadPenaltyTicker();
+    costAware = builder.isCostAware();
+    windowOptimizer = (builder.getWindowOptimizer() == WindowOptimizer.ADAM)
+        ? new AdamOptimizer()
+        : null;
     weigher = builder.getWeigher(isAsync);
     drainBuffersTask = new PerformCleanupTask(this);
     nodeFactory = NodeFactory.newFactory(builder, isAsync);
@@ -378,9 +426,28 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     return nodeFactory.newLookupKey(key);
   }
 
+  /**
+   * Returns the node mapped to the key, or null if absent. If the cache holds keys weakly then the
+   * lookup is performed using this thread's reusable lookup key to avoid an allocation, so this
+   * method is suitable only for reads that do not retain the lookup key. A virtual thread allocates
+   * the lookup key instead, as it is often short-lived and its thread-local instance would cost
+   * more than the allocation that it avoids.
+   */
+  @Nullable Node<K, V> getNode(Object key) {
+    if (!reusesLookupKey || StripedBuffer.isVirtual(Thread.currentThread())) {
+      return data.get(nodeFactory.newLookupKey(key));
+    }
+    var lookupKey = ReusableLookupKeyReference.acquire(key);
+    try {
+      return data.get(lookupKey);
+    } finally {
+      lookupKey.release();
+    }
+  }
+
   @Override
   public boolean isPendingEviction(K key) {
-    Node<K, V> node = data.get(nodeFactory.newLookupKey(key));
+    Node<K, V> node = getNode(key);
     return (node != null)
         && ((node.getValue() == null) || hasExpired(node, expirationTicker().read()));
   }
@@ -695,6 +762,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     setHitsInSample(0);
     setMissesInSample(0);
     setStepSize(-HILL_CLIMBER_STEP_PERCENT * max);
+    if (windowOptimizer != null) {
+      windowOptimizer.reset();
+    }
 
     if ((frequencySketch() != null) && !isWeighted() && (weightedSize() >= (max >>> 1))) {
       // Lazily initialize when close to the maximum size
@@ -759,6 +829,11 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
    * consumed in LRU order and the evicted entry is the one with a lower relative frequency, where
    * the preference is to retain the main space's victims versus the window space's candidates on a
    * tie.
+   * <p>
+   * When the admission is weight-aware, a candidate that is heavier than the victim is compared
+   * against all of the victims that it would displace. The candidate is admitted only if it is
+   * more popular than these victims combined, after which they are evicted without further
+   * comparisons.
    *
    * @param candidate the first candidate promoted into the probation space
    */
@@ -766,6 +841,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
   void evictFromMain(@Var @Nullable Node<K, V> candidate) {
     @Var int victimQueue = PROBATION;
     @Var int candidateQueue = PROBATION;
+    @Var long displacedWeight = 0L;
     @Var Node<K, V> victim = accessOrderProbationDeque().peekFirst();
     while (weightedSize() > maximum()) {
       // Search the admission window for additional candidates
@@ -776,6 +852,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
 
       // Try evicting from the protected and window queues
       if ((candidate == null) && (victim == null)) {
+        displacedWeight = 0L;
         if (victimQueue == PROBATION) {
           victim = accessOrderProtectedDeque().peekFirst();
           victimQueue = PROTECTED;
@@ -827,6 +904,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
       K candidateKey = candidate.getKey();
       if (victimKey == null) {
         Node<K, V> evict = victim;
+        displacedWeight = Math.max(0L, displacedWeight - victim.getPolicyWeight());
         victim = victim.getNextInAccessOrder();
         evictEntry(evict, RemovalCause.COLLECTED, 0L);
         continue;
@@ -840,6 +918,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
       // Evict immediately if an entry was removed
       if (!victim.isAlive()) {
         Node<K, V> evict = victim;
+        displacedWeight = Math.max(0L, displacedWeight - victim.getPolicyWeight());
         victim = victim.getNextInAccessOrder();
         evictEntry(evict, RemovalCause.SIZE, 0L);
         continue;
@@ -858,6 +937,33 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
         continue;
       }
 
+      // Evict the victims that were outweighed by a previously admitted candidate
+      if (displacedWeight > 0) {
+        Node<K, V> evict = victim;
+        displacedWeight = Math.max(0L, displacedWeight - victim.getPolicyWeight());
+        victim = victim.getNextInAccessOrder();
+        evictEntry(evict, RemovalCause.SIZE, 0L);
+        continue;
+      }
+
+      // Evict the candidate or all of the victims that it would displace
+      long excess = Math.min(weightedSize() - maximum(), candidate.getPolicyWeight());
+      if (weightAwareAdmission && (victim.getPolicyWeight() < excess)) {
+        long victimsWeight = admitByWeight(candidate, candidateKey, victim, excess);
+        if (victimsWeight > 0) {
+          Node<K, V> evict = victim;
+          displacedWeight = victimsWeight - victim.getPolicyWeight();
+          victim = victim.getNextInAccessOrder();
+          evictEntry(evict, RemovalCause.SIZE, 0L);
+          candidate = candidate.getNextInAccessOrder();
+        } else {
+          Node<K, V> evict = candidate;
+          candidate = candidate.getNextInAccessOrder();
+          evictEntry(evict, RemovalCause.SIZE, 0L);
+        }
+        continue;
+      }
+
       // Evict the entry with the lowest frequency
       if (admit(candidateKey, victimKey)) {
         Node<K, V> evict = victim;
@@ -886,7 +992,65 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
   boolean admit(K candidateKey, K victimKey) {
     int victimFreq = frequencySketch().frequency(victimKey);
     int candidateFreq = frequencySketch().frequency(candidateKey);
-    if (candidateFreq > victimFreq) {
+    return admit(candidateFreq, admissionPriority(candidateKey, candidateFreq),
+        admissionPriority(victimKey, victimFreq));
+  }
+
+  /**
+   * Returns the estimated frequency of the entry, which is scaled by its load penalty if the
+   * eviction policy is cost-aware.
+   */
+  @GuardedBy("evictionLock")
+  int admissionPriority(K key, int frequency) {
+    return costAware ? frequency * (1 + frequencySketch().penalty(key)) : frequency;
+  }
+
+  /**
+   * Determines if the candidate should be accepted into the main space, as determined by its
+   * frequency relative to the combined frequency of the victims that must be evicted to make room
+   * for it. The victims are the entries that follow the eviction policy's victim in its queue until
+   * the excess weight is covered, where a collected or removed entry is weighed but not counted.
+   *
+   * @param candidate the entry being proposed for long term retention
+   * @param candidateKey the key for the entry being proposed for long term retention
+   * @param victim the entry chosen by the eviction policy for replacement
+   * @param excess the weight that must be evicted to restore the cache to its maximum
+   * @return the combined weight of the victims to eject if the candidate should be admitted, or
+   *         zero if it should be rejected
+   */
+  @GuardedBy("evictionLock")
+  long admitByWeight(Node<K, V> candidate, K candidateKey, Node<K, V> victim, long excess) {
+    int candidateFreq = frequencySketch().frequency(candidateKey);
+    int candidatePriority = admissionPriority(candidateKey, candidateFreq);
+    @Var int victimsPriority = 0;
+    @Var long victimsWeight = 0L;
+    for (@Var Node<K, V> node = victim; (node != null) && (node != candidate)
+        && (victimsWeight < excess); node = node.getNextInAccessOrder()) {
+      victimsWeight += node.getPolicyWeight();
+      K key = node.getKey();
+      if ((key != null) && node.isAlive()) {
+        victimsPriority += admissionPriority(key, frequencySketch().frequency(key));
+        if (victimsPriority >= candidatePriority) {
+          break;
+        }
+      }
+    }
+    return admit(candidateFreq, candidatePriority, victimsPriority) ? victimsWeight : 0L;
+  }
+
+  /**
+   * Determines if the candidate should be accepted into the main space based on its priority
+   * relative to the victim's. The priorities are the frequencies scaled by the load penalties if
+   * the eviction policy is cost-aware, whereas the random admission of a warm candidate considers
+   * only its frequency so that a cold but expensive candidate is not admitted by chance.
+   *
+   * @param candidateFreq the estimated frequency of the entry being proposed for retention
+   * @param candidatePriority the admission priority of the entry being proposed for retention
+   * @param victimPriority the admission priority of the entry or entries chosen for replacement
+   * @return if the candidate should be admitted and the victim ejected
+   */
+  static boolean admit(int candidateFreq, int candidatePriority, int victimPriority) {
+    if (candidatePriority > victimPriority) {
       return true;
     } else if (candidateFreq >= ADMIT_HASHDOS_THRESHOLD) {
       // The maximum frequency is 15 and halved to 7 after a reset to age the history. An attack
@@ -905,14 +1069,15 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     expireAfterAccessEntries(now);
     expireAfterWriteEntries(now);
     expireVariableEntries(now);
+    long refreshAheadDelay = refreshAheadEntries(now);
 
     Pacer pacer = pacer();
     if (pacer != null) {
-      long delay = getExpirationDelay(now);
+      long delay = Math.min(getExpirationDelay(now), refreshAheadDelay);
       if (delay == Long.MAX_VALUE) {
         pacer.cancel();
       } else {
-        pacer.schedule(executor, drainBuffersTask, now, delay);
+        pacer.schedule(maintenanceExecutor, drainBuffersTask, now, delay);
       }
     }
   }
@@ -968,6 +1133,80 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     }
   }
 
+  /**
+   * Refreshes the popular entries whose refresh interval has elapsed, without waiting for a read to
+   * trigger the refresh. The write-order queue is scanned for a bounded number of stale entries per
+   * cycle, resuming from where the previous scan stopped so that the entries further back are
+   * reached even if many unpopular stale entries are at the head, which are refreshed when read.
+   * The refreshes are submitted to the executor so that they are performed outside of the eviction
+   * lock.
+   *
+   * @param now the current time, in nanoseconds
+   * @return the duration until the next scan should be performed, or {@link Long#MAX_VALUE} if no
+   *         entries remain to be scanned
+   */
+  @GuardedBy("evictionLock")
+  long refreshAheadEntries(long now) {
+    if (refreshAheadFrequency == 0) {
+      return Long.MAX_VALUE;
+    }
+
+    // Resume from the cursor unless it was removed or moved to the tail by a write
+    @Var Node<K, V> node = refreshAheadCursor;
+    if ((node == null) || (node.getWriteTime() != refreshAheadCursorTime)
+        || !writeOrderDeque().contains(node)) {
+      node = writeOrderDeque().peekFirst();
+    }
+
+    var pending = refreshes;
+    for (@Var int scanned = 0; node != null; node = node.getNextInWriteOrder()) {
+      refreshAheadCursor = node;
+      refreshAheadCursorTime = node.getWriteTime();
+      long refreshDelay = refreshAfterWriteNanos() - (now - refreshAheadCursorTime);
+      if (refreshDelay >= 0) {
+        return refreshDelay;
+      } else if ((refreshAheadCount.get() >= refreshAheadConcurrency)
+          || (++scanned > REFRESH_AHEAD_SCAN_LIMIT)) {
+        return Pacer.TOLERANCE;
+      }
+      K key = node.getKey();
+      if ((key == null) || (frequencySketch().frequency(key) < refreshAheadFrequency)
+          || ((pending != null) && pending.containsKey(node.getKeyReference()))) {
+        continue;
+      }
+      refreshAheadCount.incrementAndGet();
+      try {
+        Node<K, V> refreshed = node;
+        executor.execute(() -> refreshAhead(refreshed));
+      } catch (Throwable t) {
+        logger.log(Level.WARNING, "Exception thrown when submitting refresh task", t);
+        refreshAheadCount.decrementAndGet();
+        return Pacer.TOLERANCE;
+      }
+    }
+    refreshAheadCursor = null;
+    return Long.MAX_VALUE;
+  }
+
+  /** Refreshes the entry and releases its permit once the refresh, if started, completes. */
+  void refreshAhead(Node<K, V> node) {
+    @Var CompletableFuture<?> refresh = null;
+    try {
+      refreshIfNeeded(node, expirationTicker().read());
+      var pending = refreshes;
+      Object keyReference = node.getKeyReference();
+      if ((pending != null) && (keyReference != null)) {
+        refresh = pending.get(keyReference);
+      }
+    } finally {
+      if (refresh == null) {
+        refreshAheadCount.decrementAndGet();
+      } else {
+        refresh.whenComplete((result, error) -> refreshAheadCount.decrementAndGet());
+      }
+    }
+  }
+
   /** Returns the duration until the next item expires, or {@link Long#MAX_VALUE} if none. */
   @GuardedBy("evictionLock")
   long getExpirationDelay(long now) {
@@ -1151,13 +1390,18 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
 
     double hitRate = (double) hitsInSample() / requestCount;
     double hitRateChange = hitRate - previousSampleHitRate();
-    double amount = (hitRateChange >= 0) ? stepSize() : -stepSize();
-    double nextStepSize = (Math.abs(hitRateChange) >= HILL_CLIMBER_RESTART_THRESHOLD)
-        ? HILL_CLIMBER_STEP_PERCENT * maximum() * (amount >= 0 ? 1 : -1)
-        : HILL_CLIMBER_STEP_DECAY_RATE * amount;
+    if (windowOptimizer == null) {
+      double amount = (hitRateChange >= 0) ? stepSize() : -stepSize();
+      double nextStepSize = (Math.abs(hitRateChange) >= HILL_CLIMBER_RESTART_THRESHOLD)
+          ? HILL_CLIMBER_STEP_PERCENT * maximum() * (amount >= 0 ? 1 : -1)
+          : HILL_CLIMBER_STEP_DECAY_RATE * amount;
+      setAdjustment((long) amount);
+      setStepSize(nextStepSize);
+    } else {
+      double learningRate = HILL_CLIMBER_STEP_PERCENT * maximum();
+      setAdjustment((long) windowOptimizer.adjust(hitRateChange, learningRate));
+    }
     setPreviousSampleHitRate(hitRate);
-    setAdjustment((long) amount);
-    setStepSize(nextStepSize);
     setMissesInSample(0);
     setHitsInSample(0);
   }
@@ -1316,13 +1560,15 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     long refreshWriteTime = writeTime | 1L;
     Object keyReference = node.getKeyReference();
     ConcurrentMap<Object, CompletableFuture<?>> refreshes;
-    if (((now - writeTime) > refreshAfterWriteNanos()) && (keyReference != null)
+    if ((((now - writeTime) > refreshAfterWriteNanos()) || shouldRefreshEarly(now - writeTime))
+        && (keyReference != null)
         && ((key = node.getKey()) != null) && ((oldValue = node.getValue()) != null)
         && ((writeTime & 1L) == 0L) && !(refreshes = refreshes()).containsKey(keyReference)
         && node.isAlive() && node.casWriteTime(writeTime, refreshWriteTime)) {
       long[] startTime = new long[1];
       @SuppressWarnings({"rawtypes", "unchecked"})
       CompletableFuture<? extends V>[] refreshFuture = new CompletableFuture[1];
+      long refreshStartTime = (probabilisticRefresh == 0) ? 0L : expirationTicker().read();
       try {
         refreshes.computeIfAbsent(keyReference, k -> {
           try {
@@ -1370,6 +1616,8 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
           refreshes.remove(keyReference, refreshFuture[0]);
           statsCounter().recordLoadFailure(loadTime);
           return null;
+        } else if ((probabilisticRefresh != 0) && (newValue != null)) {
+          recordRefreshTime(expirationTicker().read() - refreshStartTime);
         }
 
         @SuppressWarnings("unchecked")
@@ -1417,6 +1665,43 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     return null;
   }
 
+  /**
+   * Returns whether an entry of the given age should be refreshed before its refresh interval has
+   * elapsed. The XFetch algorithm refreshes early if {@code delta * beta * -ln(U) >= gap}, where
+   * {@code gap} is the time remaining until the refresh interval, {@code delta} is the estimated
+   * refresh time, and {@code U} is a uniformly random number between zero and one. This is
+   * evaluated in the equivalent form of {@code U <= exp(-gap / (delta * beta))}.
+   *
+   * @param age the time since the entry was written, in nanoseconds
+   * @return if the entry should be refreshed early
+   */
+  boolean shouldRefreshEarly(long age) {
+    if (probabilisticRefresh == 0) {
+      return false;
+    }
+    long delta = refreshTimeEstimate;
+    if (delta <= 0) {
+      return false;
+    }
+    double ratio = (refreshAfterWriteNanos() - age) / (delta * probabilisticRefresh);
+    return (ratio < EARLY_REFRESH_CUTOFF)
+        && (ThreadLocalRandom.current().nextDouble() < Math.exp(-ratio));
+  }
+
+  /**
+   * Adds the duration of a successful load or refresh to the moving average that estimates how long
+   * a refresh takes. A racy update may lose a sample, which is tolerable for an estimate.
+   *
+   * @param duration the time that the load or refresh took, in nanoseconds
+   */
+  void recordRefreshTime(long duration) {
+    long estimate = refreshTimeEstimate;
+    long sample = Math.max(0, duration);
+    refreshTimeEstimate = (estimate == 0)
+        ? sample
+        : estimate + ((sample - estimate) / REFRESH_TIME_SAMPLE_WEIGHT);
+  }
+
   /**
    * Returns the expiration time for the entry after being created.
    *
@@ -1557,6 +1842,47 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     rescheduleCleanUpIfIncomplete();
   }
 
+  /**
+   * Appends the pending operation to the batch if present, otherwise performs the post-processing
+   * work required after a write.
+   *
+   * @param task the pending operation to be applied
+   * @param batch the pending operations to append to, or {@code null} to schedule the task
+   */
+  void afterWrite(Runnable task, @Nullable List<Runnable> batch) {
+    if (batch == null) {
+      afterWrite(task);
+    } else {
+      batch.add(task);
+    }
+  }
+
+  /**
+   * Applies the pending operations of a bulk write to the policy in a single maintenance run,
+   * rather than submitting them individually to the write buffer. The batch is cleared afterwards.
+   *
+   * @param batch the pending operations to be applied
+   */
+  void afterWrites(List<Runnable> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    lock();
+    try {
+      maintenance(() -> {
+        for (var task : batch) {
+          task.run();
+        }
+      });
+    } catch (RuntimeException e) {
+      logger.log(Level.ERROR, "Exception thrown when performing the maintenance task", e);
+    } finally {
+      evictionLock.unlock();
+      batch.clear();
+    }
+    rescheduleCleanUpIfIncomplete();
+  }
+
   /** Acquires the eviction lock. */
   void lock() {
     @Var long remainingNanos = WARN_AFTER_LOCK_WAIT_NANOS;
@@ -1632,7 +1958,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
           return;
         }
         setDrainStatusRelease(PROCESSING_TO_IDLE);
-        executor.execute(drainBuffersTask);
+        maintenanceExecutor.execute(drainBuffersTask);
       } catch (Throwable t) {
         logger.log(Level.WARNING, "Exception thrown when submitting maintenance task", t);
         maintenance(/* ignored */ null);
@@ -1680,7 +2006,8 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     // An immediate scheduling cannot be performed on a custom executor because it may use a
     // caller-runs policy. This could cause the caller's penalty to exceed the amortized threshold,
     // e.g. repeated concurrent writes could result in a retry loop.
-    if (executor == ForkJoinPool.commonPool()) {
+    if ((maintenanceExecutor == ForkJoinPool.commonPool())
+        || (maintenanceExecutor instanceof MaintenanceThread)) {
       scheduleDrainBuffers();
       return;
     }
@@ -1691,7 +2018,8 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     if ((pacer != null) && !pacer.isScheduled() && evictionLock.tryLock()) {
       try {
         if ((drainStatusOpaque() == REQUIRED) && !pacer.isScheduled()) {
-          pacer.schedule(executor, drainBuffersTask, expirationTicker().read(), Pacer.TOLERANCE);
+          pacer.schedule(maintenanceExecutor, drainBuffersTask,
+              expirationTicker().read(), Pacer.TOLERANCE);
         }
       } finally {
         evictionLock.unlock();
@@ -2152,7 +2480,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
 
   @Override
   public boolean containsKey(Object key) {
-    Node<K, V> node = data.get(nodeFactory.newLookupKey(key));
+    Node<K, V> node = getNode(key);
     return (node != null) && (node.getValue() != null)
         && !hasExpired(node, expirationTicker().read());
   }
@@ -2178,7 +2506,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
 
   @Override
   public @Nullable V getIfPresent(Object key, boolean recordStats) {
-    Node<K, V> node = data.get(nodeFactory.newLookupKey(key));
+    Node<K, V> node = getNode(key);
     if (node == null) {
       if (recordStats) {
         statsCounter().recordMisses(1);
@@ -2212,7 +2540,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
   @Override
   public @Nullable V getIfPresentQuietly(Object key) {
     V value;
-    Node<K, V> node = data.get(nodeFactory.newLookupKey(key));
+    Node<K, V> node = getNode(key);
     if ((node == null) || ((value = node.getValue()) == null)
         || hasExpired(node, expirationTicker().read())) {
       return null;
@@ -2229,7 +2557,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
    * @throws NullPointerException if the specified key is null
    */
   public @Nullable K getKey(K key) {
-    Node<K, V> node = data.get(nodeFactory.newLookupKey(key));
+    Node<K, V> node = getNode(key);
     if (node == null) {
       if (drainStatusOpaque() == REQUIRED) {
         scheduleDrainBuffers();
@@ -2252,7 +2580,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     for (var iter = result.entrySet().iterator(); iter.hasNext();) {
       V value;
       var entry = iter.next();
-      Node<K, V> node = data.get(nodeFactory.newLookupKey(entry.getKey()));
+      Node<K, V> node = getNode(entry.getKey());
       if ((node == null) || ((value = node.getValue()) == null) || hasExpired(node, now)) {
         iter.remove();
       } else {
@@ -2272,7 +2600,36 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
 
   @Override
   public void putAll(Map<? extends K, ? extends V> map) {
-    map.forEach(this::put);
+    if (map.size() <= 1) {
+      map.forEach(this::put);
+      return;
+    }
+    var batch = new ArrayList<Runnable>(Math.min(map.size(), WRITE_BUFFER_MAX));
+    try {
+      map.forEach((key, value) -> {
+        put(key, value, expiry(), /* onlyIfAbsent= */ false, batch);
+        if (batch.size() >= WRITE_BUFFER_MAX) {
+          afterWrites(batch);
+        }
+      });
+    } finally {
+      afterWrites(batch);
+    }
+  }
+
+  @Override
+  public void invalidateAll(Iterable<?> keys) {
+    var batch = new ArrayList<Runnable>();
+    try {
+      for (Object key : keys) {
+        removeKey(key, batch);
+        if (batch.size() >= WRITE_BUFFER_MAX) {
+          afterWrites(batch);
+        }
+      }
+    } finally {
+      afterWrites(batch);
+    }
   }
 
   @Override
@@ -2296,6 +2653,22 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
    * @return the prior value in or null if no mapping was found
    */
   @Nullable V put(K key, V value, Expiry<K, V> expiry, boolean onlyIfAbsent) {
+    return put(key, value, expiry, onlyIfAbsent, /* batch= */ null);
+  }
+
+  /**
+   * Adds a node to the policy and the data store. If an existing node is found, then its value is
+   * updated if allowed.
+   *
+   * @param key key with which the specified value is to be associated
+   * @param value value to be associated with the specified key
+   * @param expiry the calculator for the write expiration time
+   * @param onlyIfAbsent a write is performed only if the key is not already associated with a value
+   * @param batch the pending policy updates to append to, or {@code null} to schedule them
+   * @return the prior value in or null if no mapping was found
+   */
+  @Nullable V put(K key, V value, Expiry<K, V> expiry,
+      boolean onlyIfAbsent, @Nullable List<Runnable> batch) {
     requireNonNull(key);
     requireNonNull(value);
 
@@ -2313,7 +2686,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
         }
         prior = data.putIfAbsent(node.getKeyReference(), node);
         if (prior == null) {
-          afterWrite(new AddTask(node, newWeight));
+          afterWrite(new AddTask(node, newWeight), batch);
           return null;
         } else if (onlyIfAbsent) {
           // An optimistic fast path to avoid unnecessary locking
@@ -2417,9 +2790,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
 
       int weightedDifference = mayUpdate ? (newWeight - oldWeight) : 0;
       if ((oldValue == null) || (weightedDifference != 0) || expired) {
-        afterWrite(new UpdateTask(prior, weightedDifference));
+        afterWrite(new UpdateTask(prior, weightedDifference), batch);
       } else if (!onlyIfAbsent && exceedsTolerance) {
-        afterWrite(new UpdateTask(prior, weightedDifference));
+        afterWrite(new UpdateTask(prior, weightedDifference), batch);
       } else {
         if (mayUpdate) {
           setWriteTime(prior, now);
@@ -2433,6 +2806,17 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
 
   @Override
   public @Nullable V remove(Object key) {
+    return removeKey(key, /* batch= */ null);
+  }
+
+  /**
+   * Removes the mapping for the key if present.
+   *
+   * @param key key whose mapping is to be removed
+   * @param batch the pending policy updates to append to, or {@code null} to schedule them
+   * @return the prior value or null if no mapping was found
+   */
+  @Nullable V removeKey(Object key, @Nullable List<Runnable> batch) {
     @SuppressWarnings("unchecked")
     var castKey = (K) key;
     @SuppressWarnings({"rawtypes", "unchecked"})
@@ -2464,7 +2848,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     });
 
     if (cause[0] != null) {
-      afterWrite(new RemovalTask(node[0]));
+      afterWrite(new RemovalTask(node[0]), batch);
       notifyRemoval(castKey, oldValue[0], cause[0]);
     }
     return (cause[0] == RemovalCause.EXPLICIT) ? oldValue[0] : null;
@@ -2666,10 +3050,52 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     if (recordStats) {
       mappingFunction = statsAware(mappingFunction, recordLoad);
     }
+    if (costAware) {
+      mappingFunction = penaltyAware(mappingFunction);
+    }
+    if (probabilisticRefresh != 0) {
+      mappingFunction = loadTimeAware(mappingFunction);
+    }
     Object keyRef = nodeFactory.newReferenceKey(key, keyReferenceQueue());
     return doComputeIfAbsent(key, keyRef, mappingFunction, new long[] { now }, recordStats);
   }
 
+  /** Returns a function that records the load penalty of the computed value. */
+  Function<? super K, ? extends @Nullable V> penaltyAware(
+      Function<? super K, ? extends @Nullable V> mappingFunction) {
+    return key -> {
+      long startTime = loadPenaltyTicker.read();
+      @Nullable V value = mappingFunction.apply(key);
+      if (value != null) {
+        frequencySketch().recordPenalty(key, loadPenaltyTicker.read() - startTime);
+      }
+      return value;
+    };
+  }
+
+  /**
+   * Returns a function that records the duration of a load that produces a value in the estimate of
+   * how long a refresh takes, so that the first refreshes of the loaded entries may be triggered
+   * early.
+   */
+  Function<? super K, ? extends @Nullable V> loadTimeAware(
+      Function<? super K, ? extends @Nullable V> mappingFunction) {
+    return key -> {
+      long startTime = expirationTicker().read();
+      @Nullable V value = mappingFunction.apply(key);
+      if (isAsync && (value != null)) {
+        ((CompletableFuture<?>) value).thenAccept(result -> {
+          if (result != null) {
+            recordRefreshTime(expirationTicker().read() - startTime);
+          }
+        });
+      } else if (value != null) {
+        recordRefreshTime(expirationTicker().read() - startTime);
+      }
+      return value;
+    };
+  }
+
   /** Returns the current value from a computeIfAbsent invocation. */
   @Nullable V doComputeIfAbsent(K key, Object keyRef,
       Function<? super K, ? extends @Nullable V> mappingFunction, long[/* 1 */] now,
@@ -3217,6 +3643,243 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     return SnapshotEntry.forEntry(key, value, now, weight, now + expiresAfter, refreshableAt);
   }
 
+  /**
+   * Writes the entries and their policy metadata to the file in a format that can be read by
+   * {@link #restoreSnapshot}. The entries are captured in their eviction order while holding the
+   * eviction lock and are serialized after it is released, so that writers are not blocked by the
+   * I/O.
+   *
+   * @param path the file to write the snapshot to
+   * @param transformer a function that unwraps the value
+   * @throws IOException if an I/O error occurs or an entry is not serializable
+   */
+  @SuppressWarnings("GuardedByChecker")
+  void writeSnapshot(Path path, Function<@Nullable V, @Nullable V> transformer)
+      throws IOException {
+    requireNonNull(transformer);
+    requireNonNull(path);
+
+    var records = new ArrayList<SnapshotRecord<K, V>>(data.size());
+    evictionLock.lock();
+    try {
+      maintenance(/* ignored */ null);
+
+      long now = expirationTicker().read();
+      Consumer<Node<K, V>> capture = node -> {
+        V value = transformer.apply(node.getValue());
+        K key = node.getKey();
+        if ((key == null) || (value == null) || !node.isAlive() || hasExpired(node, now)) {
+          return;
+        }
+        int frequency = evicts() ? frequencySketch().frequency(key) : 0;
+        records.add(new SnapshotRecord<>(key, value, node.getQueueType(), frequency,
+            now - node.getAccessTime(), (now & ~1L) - (node.getWriteTime() & ~1L),
+            node.getVariableTime() - now));
+      };
+      if (evicts()) {
+        accessOrderWindowDeque().forEach(capture);
+        accessOrderProbationDeque().forEach(capture);
+        accessOrderProtectedDeque().forEach(capture);
+      } else if (expiresAfterAccess()) {
+        accessOrderWindowDeque().forEach(capture);
+      } else {
+        data.values().forEach(capture);
+      }
+    } finally {
+      evictionLock.unlock();
+      rescheduleCleanUpIfIncomplete();
+    }
+
+    try (var output = new ObjectOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(path)))) {
+      output.writeInt(SNAPSHOT_VERSION);
+      output.writeInt(records.size());
+      for (int i = 0; i < records.size(); i++) {
+        if ((i & SNAPSHOT_CHUNK_MASK) == 0) {
+          // Discard the stream's back references so that its handle table remains small
+          output.reset();
+        }
+        records.get(i).writeTo(output);
+      }
+    }
+  }
+
+  /**
+   * Populates the cache from a snapshot written by {@link #writeSnapshot}. The entries are linked
+   * directly into the policy's data structures in their prior order, bypassing the write buffer,
+   * and the expired entries and those that exceed the maximum are skipped.
+   *
+   * @param path the file to read the snapshot from
+   * @throws IOException if an I/O error occurs or the snapshot is malformed
+   */
+  void restoreSnapshot(Path path) throws IOException {
+    List<SnapshotRecord<K, V>> records;
+    try (var input = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      int version = input.readInt();
+      if (version != SNAPSHOT_VERSION) {
+        throw new InvalidObjectException("Unsupported snapshot version: " + version);
+      }
+      int count = input.readInt();
+      if (count < 0) {
+        throw new InvalidObjectException("Negative entry count: " + count);
+      }
+      records = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        records.add(SnapshotRecord.readFrom(input));
+      }
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+
+    evictionLock.lock();
+    try {
+      maintenance(() -> restore(records));
+    } finally {
+      evictionLock.unlock();
+      rescheduleCleanUpIfIncomplete();
+    }
+  }
+
+  /**
+   * Adds the entries to the cache and to the policy in the order they were captured in. If the
+   * entries exceed the maximum then the excess is discarded before it is added, rather than being
+   * evicted afterwards, so that the eviction listener is not notified.
+   */
+  @GuardedBy("evictionLock")
+  void restore(List<SnapshotRecord<K, V>> records) {
+    if (evicts()) {
+      frequencySketch().ensureCapacity(isWeighted() ? records.size() : maximum());
+    }
+
+    long now = expirationTicker().read();
+    var nodes = new ArrayList<@Nullable Node<K, V>>(records.size());
+    for (var record : records) {
+      K key = record.key;
+      @SuppressWarnings("unchecked")
+      V value = isAsync ? (V) CompletableFuture.completedFuture(record.value) : record.value;
+      int weight = weigher.weigh(key, value);
+      Node<K, V> node = nodeFactory.newNode(key, keyReferenceQueue(),
+          value, valueReferenceQueue(), weight, now);
+      setAccessTime(node, now - record.accessAge);
+      setWriteTime(node, now - record.writeAge);
+      setVariableTime(node, now + record.expiresAfter);
+      nodes.add(hasExpired(node, now) ? null : node);
+    }
+    if (evicts()) {
+      discardExcess(records, nodes);
+    }
+
+    var writeOrder = new ArrayList<Node<K, V>>(expiresAfterWrite() ? records.size() : 0);
+    for (int i = 0; i < records.size(); i++) {
+      var record = records.get(i);
+      var node = nodes.get(i);
+      if ((node == null) || (data.putIfAbsent(node.getKeyReference(), node) != null)) {
+        continue;
+      }
+
+      if (evicts()) {
+        int weight = node.getWeight();
+        node.setPolicyWeight(weight);
+        setWeightedSize(weightedSize() + weight);
+        if (record.queueType == PROTECTED) {
+          node.makeMainProtected();
+          accessOrderProtectedDeque().offerLast(node);
+          setMainProtectedWeightedSize(mainProtectedWeightedSize() + weight);
+        } else if (record.queueType == PROBATION) {
+          node.makeMainProbation();
+          accessOrderProbationDeque().offerLast(node);
+        } else {
+          accessOrderWindowDeque().offerLast(node);
+          setWindowWeightedSize(windowWeightedSize() + weight);
+        }
+        frequencySketch().restoreFrequency(record.key, record.frequency);
+      } else if (expiresAfterAccess()) {
+        accessOrderWindowDeque().offerLast(node);
+      }
+      if (expiresAfterWrite()) {
+        writeOrder.add(node);
+      }
+      if (expiresVariable()) {
+        timerWheel().schedule(node);
+      }
+    }
+
+    // The entries were captured in access order, but the write order must be by the write time
+    writeOrder.sort(Comparator.comparingLong(Node::getWriteTime));
+    for (var node : writeOrder) {
+      writeOrderDeque().offerLast(node);
+    }
+  }
+
+  /**
+   * Discards the restored entries that exceed the maximum in the order that the policy would evict
+   * them, which is from the least recently used end of the probation, window, and protected queues.
+   */
+  @GuardedBy("evictionLock")
+  void discardExcess(List<SnapshotRecord<K, V>> records, List<@Nullable Node<K, V>> nodes) {
+    @Var long excess = -maximum();
+    for (var node : nodes) {
+      if (node != null) {
+        excess += node.getWeight();
+      }
+    }
+    for (int queueType : new int[] { PROBATION, WINDOW, PROTECTED }) {
+      for (int i = 0; (i < nodes.size()) && (excess > 0); i++) {
+        var node = nodes.get(i);
+        if ((node != null) && (records.get(i).queueType == queueType)) {
+          excess -= node.getWeight();
+          nodes.set(i, null);
+        }
+      }
+    }
+  }
+
+  /** An entry and its policy metadata as captured by a snapshot. */
+  static final class SnapshotRecord<K, V> {
+    final long expiresAfter;
+    final long accessAge;
+    final long writeAge;
+    final int queueType;
+    final int frequency;
+    final K key;
+    final V value;
+
+    SnapshotRecord(K key, V value, int queueType, int frequency,
+        long accessAge, long writeAge, long expiresAfter) {
+      this.expiresAfter = expiresAfter;
+      this.frequency = frequency;
+      this.queueType = queueType;
+      this.accessAge = accessAge;
+      this.writeAge = writeAge;
+      this.value = value;
+      this.key = key;
+    }
+
+    void writeTo(ObjectOutputStream output) throws IOException {
+      output.writeByte(queueType);
+      output.writeByte(frequency);
+      output.writeLong(accessAge);
+      output.writeLong(writeAge);
+      output.writeLong(expiresAfter);
+      output.writeObject(key);
+      output.writeObject(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> SnapshotRecord<K, V> readFrom(ObjectInputStream input)
+        throws IOException, ClassNotFoundException {
+      int queueType = input.readByte();
+      int frequency = input.readByte();
+      long accessAge = input.readLong();
+      long writeAge = input.readLong();
+      long expiresAfter = input.readLong();
+      var key = (K) requireNonNull(input.readObject());
+      var value = (V) requireNonNull(input.readObject());
+      return new SnapshotRecord<>(key, value, queueType,
+          frequency, accessAge, writeAge, expiresAfter);
+    }
+  }
+
   /** A function that produces an unmodifiable map up to the limit in stream order. */
   static final class SizeLimiter<K, V> implements Function<Stream<CacheEntry<K, V>>, Map<K, V>> {
     private final int expectedSize;
@@ -3930,6 +4593,11 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
     }
     if (cache.refreshAfterWrite()) {
       proxy.refreshAfterWriteNanos = cache.refreshAfterWriteNanos();
+      proxy.probabilisticRefreshBeta = cache.probabilisticRefresh;
+    }
+    if (cache.refreshAheadFrequency != 0) {
+      proxy.refreshAheadConcurrency = cache.refreshAheadConcurrency;
+      proxy.refreshAheadFrequency = cache.refreshAheadFrequency;
     }
     if (cache.evicts()) {
       if (cache.isWeighted) {
@@ -3938,8 +4606,17 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
       } else {
         proxy.maximumSize = cache.maximum();
       }
+      var sketch = cache.frequencySketch();
+      proxy.frequencySketchDoorkeeper = sketch.hasDoorkeeper;
+      proxy.compactFrequencySketch = (sketch.lengthShift != 0);
+      proxy.weightAwareAdmission = cache.weightAwareAdmission;
+      proxy.costAwareEviction = cache.costAware;
+      if (cache.windowOptimizer != null) {
+        proxy.windowOptimizer = WindowOptimizer.ADAM;
+      }
     }
-    proxy.cacheLoader = cache.cacheLoader;
+    proxy.maintenanceThread = (cache.maintenanceExecutor instanceof MaintenanceThread);
+    proxy.setCacheLoader(cache.cacheLoader);
     proxy.async = cache.isAsync;
     return proxy;
   }
@@ -4039,6 +4716,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef
       var castedRefreshes = (Map<K, CompletableFuture<V>>) (Object) refreshes;
       return Collections.unmodifiableMap(new HashMap<>(castedRefreshes));
     }
+    @Override public void writeSnapshot(Path path) throws IOException {
+      cache.writeSnapshot(path, transformer);
+    }
     @Override public Optional<Eviction<K, V>> eviction() {
       return cache.evicts()
           ? (eviction == null) ? (eviction = Optional.of(new BoundedEviction())) : eviction
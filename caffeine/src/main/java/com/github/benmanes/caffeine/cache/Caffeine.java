@@ -22,6 +22,7 @@ import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
@@ -48,6 +49,7 @@ import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
 import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.FormatMethod;
+import com.google.errorprone.annotations.Var;
 
 /**
  * A builder of {@link Cache}, {@link LoadingCache}, {@link AsyncCache}, and
@@ -153,6 +155,10 @@ public final class Caffeine<K, V> {
   static final int DEFAULT_REFRESH_NANOS = 0;
 
   boolean strictParsing = true;
+  boolean weightAwareAdmission;
+  boolean compactSketch;
+  boolean doorkeeper;
+  boolean costAware;
   boolean interner;
 
   long maximumSize = UNSET_INT;
@@ -162,13 +168,25 @@ public final class Caffeine<K, V> {
   long expireAfterWriteNanos = UNSET_INT;
   long expireAfterAccessNanos = UNSET_INT;
   long refreshAfterWriteNanos = UNSET_INT;
+  long coalesceDelayNanos = UNSET_INT;
+  long refreshTimeoutNanos = UNSET_INT;
+  long loadTimeoutNanos = UNSET_INT;
+  double probabilisticRefreshBeta;
+  double hedgePercentile;
+  int coalesceBatchSize = UNSET_INT;
+  int refreshAheadConcurrency = UNSET_INT;
+  int refreshAheadFrequency = UNSET_INT;
 
   @Nullable RemovalListener<? super K, ? super V> evictionListener;
   @Nullable RemovalListener<? super K, ? super V> removalListener;
   @Nullable Supplier<StatsCounter> statsCounterSupplier;
+  @Nullable MaintenanceThread maintenanceThread;
   @Nullable Weigher<? super K, ? super V> weigher;
+  @Nullable WindowOptimizer windowOptimizer;
   @Nullable Expiry<? super K, ? super V> expiry;
+  @Nullable LoadLimiter loadLimiter;
   @Nullable Scheduler scheduler;
+  @Nullable Path snapshotPath;
   @Nullable Executor executor;
   @Nullable Ticker ticker;
 
@@ -354,6 +372,31 @@ public final class Caffeine<K, V> {
     return (executor == null) ? ForkJoinPool.commonPool() : executor;
   }
 
+  /**
+   * Specifies a dedicated thread to perform the cache's periodic maintenance on, instead of the
+   * {@link #executor}. The maintenance applies the pending reads and writes to the cache's
+   * policies, and if it is delayed behind other tasks then the writers may be required to perform
+   * this work themselves. A dedicated thread isolates the maintenance from the application's tasks,
+   * such as when the {@link ForkJoinPool#commonPool()} is saturated, and records the drain latency.
+   * The removal notifications and asynchronous computations continue to use the {@link #executor}.
+   *
+   * @param maintenanceThread the thread to perform the maintenance work on
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if a maintenance thread was already set
+   * @throws NullPointerException if the specified maintenance thread is null
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> maintenanceThread(MaintenanceThread maintenanceThread) {
+    requireState(this.maintenanceThread == null,
+        "maintenance thread was already set to %s", this.maintenanceThread);
+    this.maintenanceThread = requireNonNull(maintenanceThread);
+    return this;
+  }
+
+  Executor getMaintenanceExecutor() {
+    return (maintenanceThread == null) ? getExecutor() : maintenanceThread;
+  }
+
   /**
    * Specifies the scheduler to use when scheduling routine maintenance based on an expiration
    * event. This augments the periodic maintenance that occurs during normal cache operations to
@@ -499,6 +542,139 @@ public final class Caffeine<K, V> {
     return self;
   }
 
+  /**
+   * Specifies that the size-based eviction policy should estimate the popularity of entries using a
+   * compact frequency sketch. By default the sketch requires 8 bytes per entry of the maximum size
+   * (or weight), which can be a significant overhead for a very large cache. The compact sketch
+   * requires a quarter of that memory, but its estimates are less accurate and this may result in a
+   * slightly lower hit rate. The simulator can be used to evaluate this trade-off for a workload.
+   * <p>
+   * This feature requires that either {@link #maximumSize} or {@link #maximumWeight} is specified.
+   *
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if the compact frequency sketch was already set
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> compactFrequencySketch() {
+    requireState(!compactSketch, "compact frequency sketch was already set");
+    compactSketch = true;
+    return this;
+  }
+
+  /**
+   * Specifies that the size-based eviction policy should record the first access to an entry in a
+   * small Bloom filter, called a doorkeeper, rather than in its frequency sketch. This prevents
+   * entries that are used only once from polluting the sketch's counters and from hastening their
+   * aging, which can improve the accuracy of the admission policy for workloads that have many such
+   * one-hit wonders. The doorkeeper requires an additional byte per entry of the maximum size (or
+   * weight) and is cleared whenever the frequencies are aged.
+   * <p>
+   * This feature requires that either {@link #maximumSize} or {@link #maximumWeight} is specified.
+   *
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if the frequency sketch doorkeeper was already set
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> frequencySketchDoorkeeper() {
+    requireState(!doorkeeper, "frequency sketch doorkeeper was already set");
+    doorkeeper = true;
+    return this;
+  }
+
+  /**
+   * Specifies that the size-based eviction policy should prefer to retain the entries that are
+   * expensive to recompute. The duration of each load performed by {@link Cache#get} or
+   * {@link LoadingCache#get} is measured using the {@link #ticker} and recorded in the frequency
+   * sketch, and a candidate is admitted if its frequency scaled by its load penalty exceeds that of
+   * the victim. This may reduce the total time spent loading on a miss for a workload whose loads
+   * have a skewed latency, at the cost of a lower hit rate for the entries that are cheap to load.
+   * The load penalty requires an additional byte per entry of the maximum size (or weight).
+   * <p>
+   * This feature requires that either {@link #maximumSize} or {@link #maximumWeight} is specified
+   * and it cannot be used with an {@link AsyncCache}.
+   *
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if cost-aware eviction was already set
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> costAwareEviction() {
+    requireState(!costAware, "cost-aware eviction was already set");
+    costAware = true;
+    return this;
+  }
+
+  boolean isCostAware() {
+    return costAware;
+  }
+
+  Ticker getLoadPenaltyTicker() {
+    return costAware
+        ? (ticker == null) ? Ticker.systemTicker() : ticker
+        : Ticker.disabledTicker();
+  }
+
+  Ticker getHedgeTicker() {
+    return (hedgePercentile != 0)
+        ? (ticker == null) ? Ticker.systemTicker() : ticker
+        : Ticker.disabledTicker();
+  }
+
+  /**
+   * Specifies the strategy that the size-based eviction policy should use to adapt the size of its
+   * admission window to the workload. By default the window is adapted using hill climbing, which
+   * may converge slowly or oscillate when the workload continuously shifts between being recency
+   * and frequency biased. An alternative optimizer may be more effective in that case, and the
+   * simulator can be used to evaluate the strategies for a workload.
+   * <p>
+   * This feature requires that either {@link #maximumSize} or {@link #maximumWeight} is specified.
+   *
+   * @param windowOptimizer the strategy for adapting the size of the admission window
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if a window optimizer was already set
+   * @throws NullPointerException if the specified window optimizer is null
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> windowOptimizer(WindowOptimizer windowOptimizer) {
+    requireState(this.windowOptimizer == null,
+        "window optimizer was already set to %s", this.windowOptimizer);
+    this.windowOptimizer = requireNonNull(windowOptimizer);
+    return this;
+  }
+
+  WindowOptimizer getWindowOptimizer() {
+    return (windowOptimizer == null) ? WindowOptimizer.HILL_CLIMBING : windowOptimizer;
+  }
+
+  <K1 extends K> FrequencySketch<K1> newFrequencySketch() {
+    return new FrequencySketch<>(compactSketch, doorkeeper, costAware);
+  }
+
+  /**
+   * Specifies that the size-based eviction policy should take the weight of entries into account
+   * when deciding whether to admit a new entry. By default a candidate is admitted if it is used
+   * more frequently than the eviction policy's victim, so a single heavy candidate may displace
+   * many lighter entries that are each used less often but are more valuable in aggregate. When
+   * weight-aware admission is enabled, a candidate that is heavier than the victim is admitted only
+   * if it is used more frequently than all of the entries that it would displace combined. This
+   * favors retaining many small, popular entries and may improve the byte hit rate for a cache
+   * whose entries vary widely in size.
+   * <p>
+   * This feature requires that {@link #maximumWeight} is specified.
+   *
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if weight-aware admission was already set
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> weightAwareAdmission() {
+    requireState(!weightAwareAdmission, "weight-aware admission was already set");
+    weightAwareAdmission = true;
+    return this;
+  }
+
+  boolean isWeightAwareAdmission() {
+    return weightAwareAdmission;
+  }
+
   boolean evicts() {
     return getMaximum() != UNSET_INT;
   }
@@ -854,6 +1030,322 @@ public final class Caffeine<K, V> {
     return refreshAfterWrite() ? refreshAfterWriteNanos : DEFAULT_REFRESH_NANOS;
   }
 
+  /**
+   * Specifies that an entry may be refreshed before its {@link #refreshAfterWrite} interval has
+   * elapsed, with a probability that increases as that deadline approaches. When many entries are
+   * written at about the same time, such as when a cache is warmed, their refreshes would otherwise
+   * all be triggered together and the reloads would reach the backing resource in a burst. An early
+   * refresh spreads this work out so that, ideally, an entry is reloaded just before it becomes
+   * stale.
+   * <p>
+   * This is the XFetch algorithm, where a read triggers an early refresh when
+   * {@code loadTime * beta * -ln(random()) >= timeUntilRefresh}. The load time is an exponentially
+   * weighted moving average of the duration of the cache's loads and refreshes, so that a slow
+   * loader is started further in advance. The {@code beta} factor scales how eagerly the refreshes
+   * occur, where a value of {@code 1.0} is a good default, a larger value favors refreshing
+   * earlier, and a smaller value favors refreshing later. The estimate is seeded by the loads that
+   * populate the cache, so the refreshes of a warmed cache are spread out from the first cycle. An
+   * early refresh is performed in the same manner as a regular one and is deduplicated with any
+   * in-flight refresh of that entry.
+   *
+   * @param beta the scaling factor of how far in advance the refreshes may occur
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code beta} is not a positive, finite number
+   * @throws IllegalStateException if the probabilistic refresh was already set
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> probabilisticRefresh(double beta) {
+    requireState(probabilisticRefreshBeta == 0,
+        "probabilistic refresh was already set to %s", probabilisticRefreshBeta);
+    requireArgument((beta > 0) && Double.isFinite(beta), "beta must be positive: %s", beta);
+    this.probabilisticRefreshBeta = beta;
+    return this;
+  }
+
+  double getProbabilisticRefreshBeta() {
+    return probabilisticRefreshBeta;
+  }
+
+  /**
+   * Specifies that popular entries should be refreshed proactively once their
+   * {@link #refreshAfterWrite} interval has elapsed, rather than waiting for the next read to
+   * trigger the refresh. A {@code refreshAfterWrite} refresh is otherwise lazy, so the first reader
+   * after the interval is served the old value and an idle entry remains stale until it expires.
+   * This option is intended for entries that are frequently used but may be idle at times, so that
+   * they are reloaded before their {@link #expireAfterWrite} duration has elapsed.
+   * <p>
+   * The candidates are found during the cache's maintenance, which refreshes the entries whose
+   * interval has elapsed and whose popularity, as estimated by the eviction policy, is at least the
+   * {@code minimumFrequency}. The other entries continue to be refreshed when they are read. The
+   * refreshes are performed by the {@link #executor} in the same manner as a regular refresh, and
+   * no more than {@code maximumConcurrentRefreshes} are started while any refreshes are in-flight,
+   * so that the refresh traffic does not overwhelm the backing resource. An entry continues to be
+   * served while it is being refreshed and, if the refresh fails, until it expires.
+   * <p>
+   * The maintenance is typically performed as a side effect of other activity on the cache. A
+   * {@link #scheduler} should be configured so that the maintenance is also performed when a
+   * popular entry becomes eligible for a refresh while the cache is idle.
+   * <p>
+   * This feature requires that {@link #refreshAfterWrite}, {@link #expireAfterWrite}, and either
+   * {@link #maximumSize} or {@link #maximumWeight} are configured.
+   *
+   * @param minimumFrequency the estimated number of recent reads, from 1 to 15, that makes an entry
+   *        eligible to be refreshed ahead of a read
+   * @param maximumConcurrentRefreshes the maximum number of in-flight refreshes while new ones are
+   *        started proactively
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code minimumFrequency} is not between 1 and 15 or if
+   *         {@code maximumConcurrentRefreshes} is not positive
+   * @throws IllegalStateException if the refresh ahead was already set
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> refreshAhead(int minimumFrequency, int maximumConcurrentRefreshes) {
+    requireState(refreshAheadFrequency == UNSET_INT,
+        "refresh ahead was already set to %s", refreshAheadFrequency);
+    requireArgument((minimumFrequency >= 1) && (minimumFrequency <= 15),
+        "minimumFrequency must be between 1 and 15: %s", minimumFrequency);
+    requireArgument(maximumConcurrentRefreshes > 0,
+        "maximumConcurrentRefreshes must be positive: %s", maximumConcurrentRefreshes);
+    this.refreshAheadConcurrency = maximumConcurrentRefreshes;
+    this.refreshAheadFrequency = minimumFrequency;
+    return this;
+  }
+
+  boolean refreshesAhead() {
+    return refreshAheadFrequency != UNSET_INT;
+  }
+
+  int getRefreshAheadFrequency() {
+    return refreshesAhead() ? refreshAheadFrequency : 0;
+  }
+
+  int getRefreshAheadConcurrency() {
+    return refreshesAhead() ? refreshAheadConcurrency : 0;
+  }
+
+  /**
+   * Specifies that an entry should be served while stale and revalidated in the background, for a
+   * bounded period of time. This is a shorthand for configuring {@link #refreshAfterWrite} with the
+   * {@code freshness} duration and {@link #expireAfterWrite} with the sum of the {@code freshness}
+   * and {@code maximumStaleness} durations.
+   * <p>
+   * While an entry is fresh it is returned as is. Once it becomes stale, the next read returns the
+   * stale value and triggers a single asynchronous reload, so the readers do not wait on the loader
+   * at the expiration boundary. If the reload fails then the stale value continues to be served and
+   * a subsequent read retries the reload, until the entry expires after the maximum staleness has
+   * elapsed. An expired entry is not served, so a read then waits for a new value to be loaded. An
+   * entry that is not read while stale is not reloaded and expires normally.
+   *
+   * @param freshness the length of time after an entry is created or updated that it is served
+   *     without being reloaded
+   * @param maximumStaleness the additional length of time that a stale entry may be served while it
+   *     is being reloaded, or if the reload fails
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code freshness} or {@code maximumStaleness} is zero or
+   *     negative
+   * @throws IllegalStateException if the refresh interval or the write expiration time was already
+   *     set
+   * @throws NullPointerException if either duration is null
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> staleWhileRevalidate(Duration freshness, Duration maximumStaleness) {
+    long freshnessNanos = toNanosSaturated(freshness);
+    long stalenessNanos = toNanosSaturated(maximumStaleness);
+    requireArgument(freshnessNanos > 0, "freshness must be positive: %s", freshness);
+    requireArgument(stalenessNanos > 0, "maximum staleness must be positive: %s", maximumStaleness);
+    long expirationNanos = freshnessNanos + stalenessNanos;
+    if (expirationNanos < 0) {
+      expirationNanos = Long.MAX_VALUE;
+    }
+    requireState(expireAfterWriteNanos == UNSET_INT,
+        "expireAfterWrite was already set to %s ns", expireAfterWriteNanos);
+    requireState(expiry == null, "expireAfterWrite may not be used with variable expiration");
+    refreshAfterWrite(freshnessNanos, TimeUnit.NANOSECONDS);
+    return expireAfterWrite(expirationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Specifies that the loads of absent keys should be buffered and dispatched together as a single
+   * {@link AsyncCacheLoader#asyncLoadAll} call. A backend that is cheaper per key when queried in
+   * batches may then serve the misses of many concurrent callers with far fewer requests. A batch
+   * is dispatched once it holds {@code maximumBatchSize} keys or once its first key has waited for
+   * {@code maximumDelay}, whichever occurs first, and each caller receives the value that the bulk
+   * load returned for its key. A key that is absent from the result is treated as not found.
+   * <p>
+   * The loader must implement {@link CacheLoader#loadAll} or {@link AsyncCacheLoader#asyncLoadAll},
+   * otherwise the cache cannot be built. Explicit bulk loads, such as {@link LoadingCache#getAll},
+   * and reloads are delegated directly to the loader without being buffered.
+   * <p>
+   * <b>Note:</b> a {@link LoadingCache} caller blocks while its key is buffered, which may add up
+   * to {@code maximumDelay} to the latency of every miss. An {@link AsyncLoadingCache} is
+   * preferred, as its callers receive a future without waiting for the batch to be dispatched. A
+   * batch is dispatched by the caller that fills it or by a timer, but a {@link CacheLoader}'s
+   * bulk load is performed by the {@link #executor(Executor)} while the callers wait. A
+   * {@link LoadingCache} should therefore not be read by the tasks of a bounded executor that is
+   * also the cache's, as otherwise the callers may occupy every thread and deadlock.
+   *
+   * @param maximumBatchSize the maximum number of keys to load in a single batch
+   * @param maximumDelay the maximum time that a key is buffered before its batch is dispatched
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maximumBatchSize} or {@code maximumDelay} is zero or
+   *     negative
+   * @throws IllegalStateException if load coalescing was already set
+   * @throws NullPointerException if the specified delay is null
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> coalesceLoads(int maximumBatchSize, Duration maximumDelay) {
+    requireState(coalesceBatchSize == UNSET_INT,
+        "coalesced loads were already set to a batch size of %s", coalesceBatchSize);
+    long delayNanos = toNanosSaturated(maximumDelay);
+    requireArgument(maximumBatchSize > 0,
+        "maximum batch size must be positive: %s", maximumBatchSize);
+    requireArgument(delayNanos > 0, "maximum delay must be positive: %s", maximumDelay);
+    this.coalesceBatchSize = maximumBatchSize;
+    this.coalesceDelayNanos = delayNanos;
+    return this;
+  }
+
+  boolean coalescesLoads() {
+    return (coalesceBatchSize != UNSET_INT);
+  }
+
+  /**
+   * Specifies that the cache's loads should be limited by the {@link LoadLimiter}, so that no more
+   * than its maximum concurrency of loads are in-flight at any time. This applies to the loads of
+   * absent entries, such as by {@link LoadingCache#get}, to the bulk loads, such as by
+   * {@link LoadingCache#getAll}, and to the reloads, whether triggered by
+   * {@link #refreshAfterWrite} or by {@link LoadingCache#refresh}. The excess operations wait in a
+   * fair queue for their turn, where a {@link LoadingCache} caller blocks and an
+   * {@link AsyncLoadingCache} caller receives a future that is completed once its load has been
+   * performed. The limiter's queue length may be bounded to shed the excess work instead, and its
+   * queue depth and in-flight count may be monitored.
+   * <p>
+   * If {@link #coalesceLoads} is also configured then the limit applies to the bulk loads that are
+   * dispatched, rather than to the individual keys that are buffered.
+   *
+   * @param loadLimiter the limiter on the concurrency of the loads
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if a load limiter was already set
+   * @throws NullPointerException if the specified load limiter is null
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> loadLimiter(LoadLimiter loadLimiter) {
+    requireState(this.loadLimiter == null, "load limiter was already set to %s", this.loadLimiter);
+    this.loadLimiter = requireNonNull(loadLimiter);
+    return this;
+  }
+
+  /**
+   * Specifies the maximum time that the cache waits for a load to complete. If the load of an
+   * absent entry, such as by {@link LoadingCache#get}, or a bulk load, such as by
+   * {@link LoadingCache#getAll}, takes longer then it fails with a
+   * {@link java.util.concurrent.TimeoutException}. The in-flight entry is removed so that the next
+   * caller starts a new load, rather than every caller for that key waiting on a pathological call
+   * to the backing resource.
+   * <p>
+   * When the timeout elapses the loader's future is cancelled, so a loader that returns a future
+   * that is responsive to cancellation, such as from an asynchronous client, may abandon its work.
+   * A {@link CacheLoader}'s blocking call is not interrupted and it runs to completion, but its
+   * result is discarded. When this option is enabled, the synchronous loads of a
+   * {@link LoadingCache} are performed by the {@link #executor} while the caller waits. If the
+   * executor is saturated, such as by the callers themselves when they run on a bounded executor
+   * that is also the cache's, then the loads fail with a timeout rather than deadlock, so the
+   * executor should have the capacity to perform the loads that the callers wait on.
+   *
+   * @param timeout the maximum time to wait for a load
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code timeout} is zero or negative
+   * @throws IllegalStateException if the load timeout was already set
+   * @throws NullPointerException if the specified timeout is null
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> loadTimeout(Duration timeout) {
+    requireState(loadTimeoutNanos == UNSET_INT,
+        "loadTimeout was already set to %s ns", loadTimeoutNanos);
+    long timeoutNanos = toNanosSaturated(timeout);
+    requireArgument(timeoutNanos > 0, "load timeout must be positive: %s", timeout);
+    this.loadTimeoutNanos = timeoutNanos;
+    return this;
+  }
+
+  /**
+   * Specifies the maximum time that the cache waits for a reload to complete, whether it was
+   * triggered by {@link #refreshAfterWrite} or by {@link LoadingCache#refresh}. If the reload takes
+   * longer then the refresh fails with a {@link java.util.concurrent.TimeoutException}, the
+   * loader's future is cancelled, and the present value continues to be served until it is
+   * refreshed again or expires.
+   *
+   * @param timeout the maximum time to wait for a reload
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code timeout} is zero or negative
+   * @throws IllegalStateException if the refresh timeout was already set
+   * @throws NullPointerException if the specified timeout is null
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> refreshTimeout(Duration timeout) {
+    requireState(refreshTimeoutNanos == UNSET_INT,
+        "refreshTimeout was already set to %s ns", refreshTimeoutNanos);
+    long timeoutNanos = toNanosSaturated(timeout);
+    requireArgument(timeoutNanos > 0, "refresh timeout must be positive: %s", timeout);
+    this.refreshTimeoutNanos = timeoutNanos;
+    return this;
+  }
+
+  /**
+   * Specifies that a slow load or reload should be hedged by starting a second attempt once the
+   * first has taken longer than the given percentile of the recent latencies. The first attempt to
+   * succeed is used and the other is cancelled. The attempts fail only if both fail. This bounds
+   * the tail latency that is caused by an occasional pathological call to the backing resource, at
+   * the cost of a small amount of additional load, such as roughly 5% for the 95th percentile.
+   * <p>
+   * The latencies are sampled from the recent successful loads and reloads. A load is not hedged
+   * until enough samples have been observed to estimate the percentile. Bulk loads are not hedged,
+   * as their latency depends on the number of keys being loaded, and the synchronous loads of a
+   * {@link LoadingCache} are hedged only if a {@link #loadTimeout} bounds the caller's wait. The
+   * latencies are measured by the {@link #ticker}. The loader should be idempotent, as a hedged key
+   * may be loaded twice concurrently.
+   *
+   * @param percentile the percentile of the latency, between 0 and 100 exclusive, after which a
+   *        second attempt is started
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code percentile} is not between 0 and 100 exclusive
+   * @throws IllegalStateException if the hedging was already set
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> hedgeLoads(double percentile) {
+    requireState(hedgePercentile == 0, "hedgeLoads was already set to %s", hedgePercentile);
+    requireArgument((percentile > 0) && (percentile < 100),
+        "percentile must be between 0 and 100: %s", percentile);
+    this.hedgePercentile = percentile;
+    return this;
+  }
+
+  boolean hasLoadDeadline() {
+    return (loadTimeoutNanos != UNSET_INT) || (refreshTimeoutNanos != UNSET_INT)
+        || (hedgePercentile != 0);
+  }
+
+  /** Returns the loader, wrapped to limit, bound, and coalesce the loads if enabled. */
+  <K1 extends K, V1 extends @Nullable V> AsyncCacheLoader<? super K1, V1> getCacheLoader(
+      AsyncCacheLoader<? super K1, V1> loader) {
+    requireNonNull(loader);
+    @Var AsyncCacheLoader<? super K1, V1> cacheLoader = loader;
+    if (loadLimiter != null) {
+      cacheLoader = LimitingLoader.<K1, V1>create(cacheLoader, loadLimiter, getExecutor());
+    }
+    if (hasLoadDeadline()) {
+      cacheLoader = DeadlineLoader.<K1, V1>create(cacheLoader, Math.max(0, loadTimeoutNanos),
+          Math.max(0, refreshTimeoutNanos), hedgePercentile, getExecutor(), getHedgeTicker());
+    }
+    if (coalescesLoads()) {
+      requireState(LocalAsyncLoadingCache.canBulkLoad(cacheLoader),
+          "coalesceLoads requires a loader that implements loadAll or asyncLoadAll");
+      cacheLoader = new CoalescingLoader<K1, V1>(
+          cacheLoader, coalesceBatchSize, coalesceDelayNanos, getExecutor());
+    }
+    return cacheLoader;
+  }
+
   /**
    * Specifies a nanosecond-precision time source for use in determining when entries should be
    * expired or refreshed. By default, {@link System#nanoTime} is used.
@@ -861,6 +1353,9 @@ public final class Caffeine<K, V> {
    * The primary intent of this method is to facilitate testing of caches which have been configured
    * with {@link #expireAfterWrite}, {@link #expireAfterAccess}, or {@link #refreshAfterWrite}. Note
    * that this ticker is not used when recording statistics.
+   * <p>
+   * A cache that is read at a very high rate may prefer a {@link Ticker#coarseTicker}, which avoids
+   * reading the system time on every access at the cost of expiring entries less precisely.
    *
    * @param ticker a nanosecond-precision time source
    * @return this {@code Caffeine} instance (for chaining)
@@ -988,6 +1483,34 @@ public final class Caffeine<K, V> {
         : castedListener;
   }
 
+  /**
+   * Specifies that the cache should be populated when it is built from a snapshot that was written
+   * by {@link Policy#writeSnapshot(Path)}. The entries are restored into their prior positions in
+   * the eviction policy with their popularity and remaining expiration time, so that a restarted
+   * application does not have to rebuild its working set. The entries are added directly without
+   * notifying the listeners, recording statistics, or being replayed through the write buffer. The
+   * entries that have since expired are discarded, as are those that exceed the configured bounds,
+   * which are chosen in the order that they would have been evicted.
+   * <p>
+   * The snapshot is read by each {@code build} method invocation, which throws an
+   * {@link java.io.UncheckedIOException} if the file cannot be read.
+   *
+   * @param path the file containing the snapshot to restore from
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if a snapshot was already set
+   * @throws NullPointerException if the specified path is null
+   */
+  @CanIgnoreReturnValue
+  public Caffeine<K, V> restoreSnapshot(Path path) {
+    requireState(snapshotPath == null, "snapshot was already set to %s", snapshotPath);
+    this.snapshotPath = requireNonNull(path);
+    return this;
+  }
+
+  @Nullable Path getSnapshotPath() {
+    return snapshotPath;
+  }
+
   /**
    * Enables the accumulation of {@link CacheStats} during the operation of the cache. Without this
    * {@link Cache#stats} will return zero for all statistics. Note that recording statistics
@@ -1033,6 +1556,7 @@ public final class Caffeine<K, V> {
 
   boolean isBounded() {
     return (maximumSize != UNSET_INT)
+        || (snapshotPath != null)
         || (maximumWeight != UNSET_INT)
         || (expireAfterAccessNanos != UNSET_INT)
         || (expireAfterWriteNanos != UNSET_INT)
@@ -1058,6 +1582,8 @@ public final class Caffeine<K, V> {
    */
   public <K1 extends K, V1 extends @Nullable V> Cache<K1, V1> build() {
     requireWeightWithWeigher();
+    requireMaximumWithEvictionOptions();
+    requireRefreshWithRefreshOptions();
     requireNonLoadingCache();
 
     @SuppressWarnings("unchecked")
@@ -1084,12 +1610,16 @@ public final class Caffeine<K, V> {
   public <K1 extends K, V1 extends @Nullable V> LoadingCache<K1, V1> build(
       CacheLoader<? super K1, V1> loader) {
     requireWeightWithWeigher();
+    requireMaximumWithEvictionOptions();
+    requireRefreshWithRefreshOptions();
+
+    var cacheLoader = (CacheLoader<? super K1, V1>) getCacheLoader(loader);
 
     @SuppressWarnings("unchecked")
     var self = (Caffeine<K1, V1>) this;
     return isBounded() || refreshAfterWrite()
-        ? new BoundedLocalCache.BoundedLocalLoadingCache<>(self, loader)
-        : new UnboundedLocalCache.UnboundedLocalLoadingCache<>(self, loader);
+        ? new BoundedLocalCache.BoundedLocalLoadingCache<>(self, cacheLoader)
+        : new UnboundedLocalCache.UnboundedLocalLoadingCache<>(self, cacheLoader);
   }
 
   /**
@@ -1114,9 +1644,12 @@ public final class Caffeine<K, V> {
    */
   public <K1 extends K, V1 extends @Nullable V> AsyncCache<K1, V1> buildAsync() {
     requireState(valueStrength == null, "Weak or soft values can not be combined with AsyncCache");
+    requireState(!costAware, "Cost-aware eviction can not be combined with AsyncCache");
     requireState(isStrongKeys() || (evictionListener == null),
         "Weak keys cannot be combined with eviction listener and AsyncLoadingCache");
     requireWeightWithWeigher();
+    requireMaximumWithEvictionOptions();
+    requireRefreshWithRefreshOptions();
     requireNonLoadingCache();
 
     @SuppressWarnings("unchecked")
@@ -1171,23 +1704,54 @@ public final class Caffeine<K, V> {
       AsyncCacheLoader<? super K1, V1> loader) {
     requireState(valueStrength == null,
         "Weak or soft values can not be combined with AsyncLoadingCache");
+    requireState(!costAware, "Cost-aware eviction can not be combined with AsyncLoadingCache");
     requireState(isStrongKeys() || (evictionListener == null),
         "Weak keys cannot be combined with eviction listener and AsyncLoadingCache");
     requireWeightWithWeigher();
-    requireNonNull(loader);
+    requireMaximumWithEvictionOptions();
+    requireRefreshWithRefreshOptions();
+    var cacheLoader = getCacheLoader(loader);
 
     @SuppressWarnings("unchecked")
     var self = (Caffeine<K1, V1>) this;
     return isBounded() || refreshAfterWrite()
-        ? new BoundedLocalCache.BoundedLocalAsyncLoadingCache<>(self, loader)
-        : new UnboundedLocalCache.UnboundedLocalAsyncLoadingCache<>(self, loader);
+        ? new BoundedLocalCache.BoundedLocalAsyncLoadingCache<>(self, cacheLoader)
+        : new UnboundedLocalCache.UnboundedLocalAsyncLoadingCache<>(self, cacheLoader);
   }
 
   void requireNonLoadingCache() {
     requireState(refreshAfterWriteNanos == UNSET_INT, "refreshAfterWrite requires a LoadingCache");
+    requireState(!coalescesLoads(), "coalesceLoads requires a LoadingCache");
+    requireState(loadLimiter == null, "loadLimiter requires a LoadingCache");
+    requireState(!hasLoadDeadline(),
+        "loadTimeout, refreshTimeout, and hedgeLoads require a LoadingCache");
+  }
+
+  void requireRefreshWithRefreshOptions() {
+    requireState((probabilisticRefreshBeta == 0) || refreshAfterWrite(),
+        "probabilisticRefresh requires refreshAfterWrite");
+    requireState(!refreshesAhead() || refreshAfterWrite(),
+        "refreshAhead requires refreshAfterWrite");
+    requireState(!refreshesAhead() || expiresAfterWrite(),
+        "refreshAhead requires expireAfterWrite");
+    requireState(!refreshesAhead() || evicts(),
+        "refreshAhead requires maximumSize or maximumWeight");
+  }
+
+  void requireMaximumWithEvictionOptions() {
+    requireState(!compactSketch || evicts(),
+        "compactFrequencySketch requires maximumSize or maximumWeight");
+    requireState(!doorkeeper || evicts(),
+        "frequencySketchDoorkeeper requires maximumSize or maximumWeight");
+    requireState(!costAware || evicts(),
+        "costAwareEviction requires maximumSize or maximumWeight");
+    requireState((windowOptimizer == null) || evicts(),
+        "windowOptimizer requires maximumSize or maximumWeight");
   }
 
   void requireWeightWithWeigher() {
+    requireState(!weightAwareAdmission || (maximumWeight != UNSET_INT),
+        "weightAwareAdmission requires maximumWeight");
     if (weigher == null) {
       requireState(maximumWeight == UNSET_INT, "maximumWeight requires weigher");
     } else if (strictParsing) {
@@ -1227,18 +1791,62 @@ public final class Caffeine<K, V> {
     if (refreshAfterWriteNanos != UNSET_INT) {
       s.append("refreshAfterWrite=").append(refreshAfterWriteNanos).append("ns, ");
     }
+    if (probabilisticRefreshBeta != 0) {
+      s.append("probabilisticRefresh=").append(probabilisticRefreshBeta).append(", ");
+    }
+    if (refreshAheadFrequency != UNSET_INT) {
+      s.append("refreshAhead=").append(refreshAheadFrequency)
+          .append('/').append(refreshAheadConcurrency).append(", ");
+    }
     if (keyStrength != null) {
       s.append("keyStrength=").append(keyStrength.toString().toLowerCase(US)).append(", ");
     }
     if (valueStrength != null) {
       s.append("valueStrength=").append(valueStrength.toString().toLowerCase(US)).append(", ");
     }
+    if (coalescesLoads()) {
+      s.append("coalesceLoads=").append(coalesceBatchSize)
+          .append('/').append(coalesceDelayNanos).append("ns, ");
+    }
+    if (loadLimiter != null) {
+      s.append("loadLimiter, ");
+    }
+    if (loadTimeoutNanos != UNSET_INT) {
+      s.append("loadTimeout=").append(loadTimeoutNanos).append("ns, ");
+    }
+    if (refreshTimeoutNanos != UNSET_INT) {
+      s.append("refreshTimeout=").append(refreshTimeoutNanos).append("ns, ");
+    }
+    if (hedgePercentile != 0) {
+      s.append("hedgeLoads=").append(hedgePercentile).append(", ");
+    }
     if (evictionListener != null) {
       s.append("evictionListener, ");
     }
     if (removalListener != null) {
       s.append("removalListener, ");
     }
+    if (maintenanceThread != null) {
+      s.append("maintenanceThread, ");
+    }
+    if (weightAwareAdmission) {
+      s.append("weightAwareAdmission, ");
+    }
+    if (compactSketch) {
+      s.append("compactFrequencySketch, ");
+    }
+    if (doorkeeper) {
+      s.append("frequencySketchDoorkeeper, ");
+    }
+    if (costAware) {
+      s.append("costAwareEviction, ");
+    }
+    if (windowOptimizer != null) {
+      s.append("windowOptimizer=").append(windowOptimizer.toString().toLowerCase(US)).append(", ");
+    }
+    if (snapshotPath != null) {
+      s.append("snapshotPath=").append(snapshotPath).append(", ");
+    }
     if (s.length() > baseLength) {
       s.delete(s.length() - 2, s.length());
     }
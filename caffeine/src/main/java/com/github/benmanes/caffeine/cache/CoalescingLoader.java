@@ -0,0 +1,191 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jspecify.annotations.Nullable;
+
+import com.google.errorprone.annotations.Var;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+
+/**
+ * A loader that buffers the individual loads of absent keys and dispatches them together as a
+ * single {@link AsyncCacheLoader#asyncLoadAll} call. A batch is dispatched when it reaches its
+ * maximum size or when its oldest key has waited for the maximum delay, whichever occurs first. The
+ * future of each buffered load is completed with the value that the bulk load returned for its key,
+ * or with {@code null} if the key was absent from the result.
+ * <p>
+ * A full batch is dispatched by the caller that filled it and an expired batch by the timer, so
+ * that the dispatch does not wait for an executor thread. The delegate's bulk load must therefore
+ * return its future promptly, as is required of an {@link AsyncCacheLoader}.
+ * <p>
+ * An explicit bulk load, such as {@link LoadingCache#getAll}, is delegated directly and is not
+ * buffered. A reload is also delegated directly, as a custom reload may depend on the old value.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class CoalescingLoader<K, V> implements CacheLoader<K, V> {
+  final AsyncCacheLoader<? super K, V> delegate;
+  final long maximumDelayNanos;
+  final int maximumBatchSize;
+  final Executor executor;
+  final ReentrantLock lock;
+
+  @GuardedBy("lock")
+  @Nullable Map<K, CompletableFuture<V>> batch;
+
+  CoalescingLoader(AsyncCacheLoader<? super K, V> delegate,
+      int maximumBatchSize, long maximumDelayNanos, Executor executor) {
+    this.maximumDelayNanos = maximumDelayNanos;
+    this.maximumBatchSize = maximumBatchSize;
+    this.delegate = requireNonNull(delegate);
+    this.executor = requireNonNull(executor);
+    this.lock = new ReentrantLock();
+  }
+
+  @Override
+  public @Nullable V load(K key) throws Exception {
+    return await(asyncLoad(key, executor));
+  }
+
+  @Override
+  @SuppressWarnings("NullAway")
+  public CompletableFuture<V> asyncLoad(K key, Executor executor) {
+    requireNonNull(key);
+    requireNonNull(executor);
+
+    @Var Map<K, CompletableFuture<V>> created = null;
+    @Var Map<K, CompletableFuture<V>> full = null;
+    CompletableFuture<V> future;
+    lock.lock();
+    try {
+      if (batch == null) {
+        batch = created = new LinkedHashMap<>();
+      }
+      future = batch.computeIfAbsent(key, k -> new CompletableFuture<>());
+      if (batch.size() >= maximumBatchSize) {
+        full = batch;
+        batch = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (full != null) {
+      dispatch(full, executor);
+    } else if (created != null) {
+      // The timer dispatches the batch itself, rather than waiting for an executor thread that may
+      // be occupied by the callers that are blocked on the batch
+      var pending = created;
+      var delayed = CompletableFuture.delayedExecutor(
+          maximumDelayNanos, NANOSECONDS, Runnable::run);
+      delayed.execute(() -> flush(pending, executor));
+    }
+    return future;
+  }
+
+  @Override
+  public Map<? extends K, ? extends V> loadAll(Set<? extends K> keys) throws Exception {
+    if (delegate instanceof CacheLoader<?, ?>) {
+      @SuppressWarnings("unchecked")
+      var loader = (CacheLoader<? super K, V>) delegate;
+      @SuppressWarnings("unchecked")
+      var loaded = (Map<? extends K, ? extends V>) loader.loadAll(keys);
+      return loaded;
+    }
+    @SuppressWarnings("unchecked")
+    var loaded = (Map<? extends K, ? extends V>) await(delegate.asyncLoadAll(keys, executor));
+    return loaded;
+  }
+
+  @Override
+  public CompletableFuture<? extends Map<? extends K, ? extends V>> asyncLoadAll(
+      Set<? extends K> keys, Executor executor) throws Exception {
+    @SuppressWarnings("unchecked")
+    var loaded = (CompletableFuture<? extends Map<? extends K, ? extends V>>)
+        delegate.asyncLoadAll(keys, executor);
+    return loaded;
+  }
+
+  @Override
+  public CompletableFuture<? extends V> asyncReload(
+      K key, V oldValue, Executor executor) throws Exception {
+    return delegate.asyncReload(key, oldValue, executor);
+  }
+
+  /** Dispatches the batch if it has not already been dispatched for reaching its maximum size. */
+  void flush(Map<K, CompletableFuture<V>> pending, Executor executor) {
+    lock.lock();
+    try {
+      if (batch != pending) {
+        return;
+      }
+      batch = null;
+    } finally {
+      lock.unlock();
+    }
+    dispatch(pending, executor);
+  }
+
+  /** Performs the bulk load for the batch and completes each of its futures with the result. */
+  void dispatch(Map<K, CompletableFuture<V>> pending, Executor executor) {
+    try {
+      var keys = Collections.unmodifiableSet(pending.keySet());
+      delegate.asyncLoadAll(keys, executor).whenComplete((result, error) -> {
+        @Var Throwable failure = error;
+        if ((failure == null) && (result == null)) {
+          failure = new NullPointerException("asyncLoadAll returned a null map");
+        }
+        for (var entry : pending.entrySet()) {
+          if (failure == null) {
+            entry.getValue().complete(result.get(entry.getKey()));
+          } else {
+            entry.getValue().completeExceptionally(failure);
+          }
+        }
+      });
+    } catch (Throwable t) {
+      for (var future : pending.values()) {
+        future.completeExceptionally(t);
+      }
+    }
+  }
+
+  /** Waits for the future to complete and throws the cause if it failed. */
+  static <T> T await(CompletableFuture<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
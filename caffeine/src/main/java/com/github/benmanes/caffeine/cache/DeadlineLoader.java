@@ -0,0 +1,267 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A loader that bounds the time that the cache waits for a load, reload, or bulk load. If the
+ * operation has not completed within its timeout then its future is completed exceptionally with a
+ * {@link java.util.concurrent.TimeoutException}, which causes the cache to discard the in-flight
+ * entry, and the loader's future is cancelled.
+ * <p>
+ * A load or reload may also be hedged by starting a second attempt once the first has taken longer
+ * than a percentile of the recent latencies. The first attempt to succeed is used and the other is
+ * cancelled. The latencies are sampled from the successful attempts, and the hedging is enabled
+ * only once enough samples have been observed to estimate the percentile. The percentile is
+ * recomputed periodically rather than on every sample, so that a successful load only records its
+ * latency in the window.
+ * <p>
+ * A synchronous load is performed by the executor only if it has a timeout, so that the caller's
+ * wait is bounded even if the executor is saturated. Otherwise it is performed by the caller and
+ * is not hedged.
+ * <p>
+ * The bulk load methods are overridden only by the {@link BulkLoader} subclass, which is used when
+ * the delegate implements them, so that the cache's detection of bulk loading is preserved.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+class DeadlineLoader<K, V> implements CacheLoader<K, V> {
+  /** The number of recent latencies that are sampled; a power of two. */
+  static final int SAMPLE_SIZE = 128;
+  /** The number of samples required before a load may be hedged. */
+  static final int MINIMUM_SAMPLES = 16;
+  /** The number of samples between recomputing the percentile; a power of two. */
+  static final int RECOMPUTE_INTERVAL = 16;
+
+  final AsyncCacheLoader<? super K, V> delegate;
+  final long refreshTimeoutNanos;
+  final long loadTimeoutNanos;
+  final double hedgePercentile;
+  final AtomicLongArray samples;
+  final AtomicLong sampleCount;
+  final Executor executor;
+  final ReentrantLock lock;
+  final Ticker ticker;
+
+  volatile long hedgeDelayNanos;
+
+  DeadlineLoader(AsyncCacheLoader<? super K, V> delegate, long loadTimeoutNanos,
+      long refreshTimeoutNanos, double hedgePercentile, Executor executor, Ticker ticker) {
+    this.refreshTimeoutNanos = refreshTimeoutNanos;
+    this.samples = new AtomicLongArray(SAMPLE_SIZE);
+    this.loadTimeoutNanos = loadTimeoutNanos;
+    this.delegate = requireNonNull(delegate);
+    this.executor = requireNonNull(executor);
+    this.hedgePercentile = hedgePercentile;
+    this.ticker = requireNonNull(ticker);
+    this.sampleCount = new AtomicLong();
+    this.lock = new ReentrantLock();
+  }
+
+  /** Returns a loader that is bounded by the deadlines, which bulk loads if the delegate does. */
+  static <K, V> DeadlineLoader<K, V> create(AsyncCacheLoader<? super K, V> delegate,
+      long loadTimeoutNanos, long refreshTimeoutNanos, double hedgePercentile,
+      Executor executor, Ticker ticker) {
+    return LocalAsyncLoadingCache.canBulkLoad(delegate)
+        ? new BulkLoader<>(delegate, loadTimeoutNanos,
+            refreshTimeoutNanos, hedgePercentile, executor, ticker)
+        : new DeadlineLoader<>(delegate, loadTimeoutNanos,
+            refreshTimeoutNanos, hedgePercentile, executor, ticker);
+  }
+
+  @Override
+  public @Nullable V load(K key) throws Exception {
+    if (loadTimeoutNanos > 0) {
+      return CoalescingLoader.await(asyncLoad(key, executor));
+    } else if (delegate instanceof CacheLoader<?, ?>) {
+      @SuppressWarnings("unchecked")
+      var loader = (CacheLoader<? super K, V>) delegate;
+      return loader.load(key);
+    }
+    return CoalescingLoader.await(delegate.asyncLoad(key, executor));
+  }
+
+  @Override
+  public CompletableFuture<V> asyncLoad(K key, Executor executor) {
+    return call(loadTimeoutNanos, /* hedge */ true, () -> delegate.asyncLoad(key, executor));
+  }
+
+  @Override
+  public CompletableFuture<V> asyncReload(K key, V oldValue, Executor executor) {
+    return call(refreshTimeoutNanos, /* hedge */ true,
+        () -> delegate.asyncReload(key, oldValue, executor));
+  }
+
+  /**
+   * Performs the operation, starting a hedged attempt if it is slow, and bounds the time that the
+   * returned future may be incomplete.
+   */
+  <T> CompletableFuture<T> call(long timeoutNanos, boolean hedge,
+      Callable<? extends CompletableFuture<? extends T>> operation) {
+    var attempts = new Attempts<T>(operation, ticker.read());
+    attempts.start();
+
+    long delay = hedgeDelayNanos;
+    if (hedge && (delay > 0) && !attempts.result.isDone()) {
+      var delayed = CompletableFuture.delayedExecutor(delay, NANOSECONDS, executor);
+      delayed.execute(attempts::start);
+    }
+    if (timeoutNanos > 0) {
+      attempts.result.orTimeout(timeoutNanos, NANOSECONDS);
+    }
+    attempts.result.whenComplete((result, error) -> attempts.cancel());
+    return attempts.result;
+  }
+
+  /**
+   * Records the latency of a successful attempt and periodically updates the delay before hedging.
+   * A sample may be overwritten by a concurrent one or a recomputation skipped if another is in
+   * progress, which is tolerable for an estimate.
+   */
+  void recordLatency(long latencyNanos) {
+    if (hedgePercentile == 0) {
+      return;
+    }
+    long count = sampleCount.incrementAndGet();
+    samples.set((int) ((count - 1) & (SAMPLE_SIZE - 1)), latencyNanos);
+    if ((count >= MINIMUM_SAMPLES) && ((count & (RECOMPUTE_INTERVAL - 1)) == 0)
+        && lock.tryLock()) {
+      try {
+        int size = (int) Math.min(count, SAMPLE_SIZE);
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+          sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil((hedgePercentile / 100) * size) - 1;
+        hedgeDelayNanos = Math.max(1, sorted[Math.max(0, index)]);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /** The attempts of an operation that race to complete its result. */
+  final class Attempts<T> {
+    final ConcurrentLinkedQueue<CompletableFuture<? extends T>> started;
+    final Callable<? extends CompletableFuture<? extends T>> operation;
+    final CompletableFuture<T> result;
+    final AtomicInteger pending;
+    final long startTime;
+
+    Attempts(Callable<? extends CompletableFuture<? extends T>> operation, long startTime) {
+      this.started = new ConcurrentLinkedQueue<>();
+      this.startTime = startTime;
+      this.result = new CompletableFuture<>();
+      this.pending = new AtomicInteger();
+      this.operation = operation;
+    }
+
+    /**
+     * Starts an attempt unless the result has already been completed. The latency of a successful
+     * attempt is measured from when the operation began, so that a winning hedge includes the delay
+     * before it was started.
+     */
+    void start() {
+      if (result.isDone()) {
+        return;
+      }
+      pending.incrementAndGet();
+      CompletableFuture<? extends T> attempt;
+      try {
+        attempt = requireNonNull(operation.call(), "Null future");
+      } catch (Throwable t) {
+        onFailure(t);
+        return;
+      }
+      started.add(attempt);
+      if (result.isDone()) {
+        attempt.cancel(/* mayInterruptIfRunning */ true);
+        return;
+      }
+      attempt.whenComplete((value, error) -> {
+        if (error != null) {
+          onFailure(error);
+        } else if (result.complete(value)) {
+          recordLatency(ticker.read() - startTime);
+        }
+      });
+    }
+
+    /** Fails the result if no other attempt may still succeed. */
+    void onFailure(Throwable error) {
+      if (pending.decrementAndGet() == 0) {
+        result.completeExceptionally(error);
+      }
+    }
+
+    /** Cancels the attempts that have not completed, propagating the cancellation to the loader. */
+    void cancel() {
+      for (var attempt : started) {
+        attempt.cancel(/* mayInterruptIfRunning */ true);
+      }
+    }
+  }
+
+  /** A deadline loader that also bounds the bulk loads of a delegate that implements them. */
+  static final class BulkLoader<K, V> extends DeadlineLoader<K, V> {
+
+    BulkLoader(AsyncCacheLoader<? super K, V> delegate, long loadTimeoutNanos,
+        long refreshTimeoutNanos, double hedgePercentile, Executor executor, Ticker ticker) {
+      super(delegate, loadTimeoutNanos, refreshTimeoutNanos, hedgePercentile, executor, ticker);
+    }
+
+    @Override
+    public Map<? extends K, ? extends V> loadAll(Set<? extends K> keys) throws Exception {
+      if ((loadTimeoutNanos == 0) && (delegate instanceof CacheLoader<?, ?>)
+          && LocalLoadingCache.hasLoadAll((CacheLoader<?, ?>) delegate)) {
+        @SuppressWarnings("unchecked")
+        var loader = (CacheLoader<? super K, V>) delegate;
+        @SuppressWarnings("unchecked")
+        var loaded = (Map<? extends K, ? extends V>) loader.loadAll(keys);
+        return loaded;
+      }
+      return CoalescingLoader.await(asyncLoadAll(keys, executor));
+    }
+
+    @Override
+    public CompletableFuture<? extends Map<? extends K, ? extends V>> asyncLoadAll(
+        Set<? extends K> keys, Executor executor) {
+      return call(loadTimeoutNanos, /* hedge */ false, () -> {
+        @SuppressWarnings("unchecked")
+        var loaded = (CompletableFuture<? extends Map<? extends K, ? extends V>>)
+            delegate.asyncLoadAll(keys, executor);
+        return loaded;
+      });
+    }
+  }
+}
@@ -17,6 +17,8 @@ package com.github.benmanes.caffeine.cache;
 
 import static com.github.benmanes.caffeine.cache.Caffeine.requireArgument;
 
+import java.util.Arrays;
+
 import com.google.errorprone.annotations.Var;
 
 /**
@@ -49,12 +51,40 @@ final class FrequencySketch<E> {
    * in the blocks not being cache-aligned, the L2 spatial prefetcher tries to load aligned pairs of
    * cache lines, so the typical cost is only one memory access.
    *
+   * A very large cache may instead use a compact sketch whose array length is a quarter of the
+   * maximum number of entries. The sample size is unchanged, so the counters are more likely to be
+   * shared between elements and to saturate before being aged. This overestimates the popularity
+   * of rarely used elements, which makes the admission policy slightly less accurate, in exchange
+   * for reducing the memory overhead from 8 bytes to 2 bytes per entry.
+   *
+   * The sketch may be fronted by a doorkeeper, which is a Bloom filter that absorbs the first
+   * occurrence of an element so that the counters only record the elements that are seen at least
+   * twice. This prevents the one-hit wonders, which are common in many workloads, from polluting
+   * the counters and from hastening their aging, as only the additions to the counters count
+   * towards the sample period. The popularity of an element in the doorkeeper is increased by one,
+   * and the filter is cleared whenever the counters are aged. To be cache friendly each element's
+   * bits are set within a single 64-bit word and the filter uses 8 bits per entry, which results in
+   * a false positive probability of a few percent when the cache is full.
+   *
+   * The sketch may also record the penalty of loading an element, so that the admission policy can
+   * prefer to retain the entries that are expensive to recompute. The load time is reduced to a
+   * 4-bit logarithmic level and stored in a byte per entry, where each element is hashed to a
+   * single slot and a collision overwrites the previous element's penalty. Unlike the counters the
+   * penalties may be recorded concurrently, as a loss or overwrite is tolerable and a plain write
+   * of a byte does not disturb its neighbors.
+   *
    * The frequency of all entries is aged periodically using a sampling window based on the maximum
    * number of entries in the cache. This is referred to as the reset operation by TinyLfu and keeps
    * the sketch fresh by dividing all counters by two and subtracting based on the number of odd
    * counters found. The O(n) cost of aging is amortized, ideal for hardware prefetching, and uses
    * inexpensive bit manipulations per array location.
    *
+   * For a very large sketch, the O(n) pass can take milliseconds and stall the maintenance work
+   * that triggered it. In this case the aging is performed incrementally by halving the counters of
+   * one block after a fixed number of additions, sweeping across the table at the rate that the
+   * periodic reset would have aged it. Each counter is still halved once per sample period, so the
+   * accuracy of the estimate is retained while the cost is spread evenly across the additions.
+   *
    * [1] An Improved Data Stream Summary: The Count-Min Sketch and its Applications
    * http://dimacs.rutgers.edu/~graham/pubs/papers/cm-full.pdf
    * [2] TinyLFU: A Highly Efficient Cache Admission Policy
@@ -65,8 +95,22 @@ final class FrequencySketch<E> {
 
   static final long RESET_MASK = 0x7777777777777777L;
   static final long ONE_MASK = 0x1111111111111111L;
+  /** The table length at which the aging is performed incrementally. */
+  static final int INCREMENTAL_AGING_THRESHOLD = 1 << 20;
+  /** The reduction of the table length, as a power of two, when the sketch is compact. */
+  static final int COMPACT_SHIFT = 2;
+  /** The multiplicative hash to select an element's word and bits in the doorkeeper. */
+  static final long DOORKEEPER_SEED = 0x9e3779b97f4a7c15L;
 
+  final boolean hasPenalties;
+  final boolean hasDoorkeeper;
+  final int lengthShift;
+  int doorkeeperShift;
+  long[] doorkeeper;
+  byte[] penalties;
+  int agingInterval;
   int sampleSize;
+  int agingBlock;
   int blockMask;
   long[] table;
   int size;
@@ -75,8 +119,24 @@ final class FrequencySketch<E> {
    * Creates a lazily initialized frequency sketch, requiring {@link #ensureCapacity} be called
    * when the maximum size of the cache has been determined.
    */
+  public FrequencySketch() {
+    this(/* compact= */ false, /* doorkeeper= */ false, /* penalties= */ false);
+  }
+
+  /**
+   * Creates a lazily initialized frequency sketch, requiring {@link #ensureCapacity} be called
+   * when the maximum size of the cache has been determined.
+   *
+   * @param compact if the table should be a quarter of the length that is ideal for accuracy
+   * @param doorkeeper if the first occurrence of an element should be recorded by a Bloom filter
+   * @param penalties if the load penalty of an element should be recorded
+   */
   @SuppressWarnings("NullAway.Init")
-  public FrequencySketch() {}
+  FrequencySketch(boolean compact, boolean doorkeeper, boolean penalties) {
+    lengthShift = compact ? COMPACT_SHIFT : 0;
+    hasDoorkeeper = doorkeeper;
+    hasPenalties = penalties;
+  }
 
   /**
    * Initializes and increases the capacity of this {@code FrequencySketch} instance, if necessary,
@@ -89,19 +149,43 @@ final class FrequencySketch<E> {
   public void ensureCapacity(long maximumSize) {
     requireArgument(maximumSize >= 0);
     int maximum = (int) Math.min(maximumSize, Integer.MAX_VALUE >>> 1);
-    if ((table != null) && (table.length >= maximum)) {
+    int length = Math.max(Caffeine.ceilingPowerOfTwo(maximum) >>> lengthShift, 8);
+    if ((table != null) && (table.length >= length)) {
       return;
     }
 
-    table = new long[Math.max(Caffeine.ceilingPowerOfTwo(maximum), 8)];
+    table = new long[length];
+    if (hasDoorkeeper) {
+      int doorkeeperLength = Math.max(Caffeine.ceilingPowerOfTwo(maximum) >>> 3, 8);
+      doorkeeperShift = Long.numberOfLeadingZeros(doorkeeperLength) + 1;
+      doorkeeper = new long[doorkeeperLength];
+    }
+    if (hasPenalties) {
+      penalties = new byte[length];
+    }
     sampleSize = (maximumSize == 0) ? 10 : (10 * maximum);
     blockMask = (table.length >>> 3) - 1;
     if (sampleSize <= 0) {
       sampleSize = Integer.MAX_VALUE;
     }
+    setIncrementalAging(table.length >= INCREMENTAL_AGING_THRESHOLD);
     size = 0;
   }
 
+  /**
+   * Sets whether the counters are aged by halving one block at a time, rather than by resetting the
+   * entire table once the sample size has been reached.
+   *
+   * @param incremental if the aging should be performed incrementally
+   */
+  void setIncrementalAging(boolean incremental) {
+    // A block is halved after every interval of additions, so that the entire table is swept in
+    // the half of a sample period that elapses between periodic resets
+    int blocks = blockMask + 1;
+    agingInterval = incremental ? Math.max(1, (sampleSize >>> 1) / blocks) : 0;
+    agingBlock = 0;
+  }
+
   /**
    * Returns if the sketch has not yet been initialized, requiring that {@link #ensureCapacity} is
    * called before it begins to track frequencies.
@@ -134,6 +218,9 @@ final class FrequencySketch<E> {
       int count = (int) ((table[slot] >>> (index << 2)) & 0xfL);
       frequency = Math.min(frequency, count);
     }
+    if (hasDoorkeeper && (frequency < 15) && doorkeeperContains(blockHash)) {
+      frequency++;
+    }
     return frequency;
   }
 
@@ -151,6 +238,10 @@ final class FrequencySketch<E> {
     }
 
     int blockHash = spread(e.hashCode());
+    if (hasDoorkeeper && doorkeeperPut(blockHash)) {
+      return;
+    }
+
     int counterHash = rehash(blockHash);
     int block = (blockHash & blockMask) << 3;
 
@@ -176,9 +267,85 @@ final class FrequencySketch<E> {
         | incrementAt(slot2, index2)
         | incrementAt(slot3, index3);
 
-    if (added && (++size == sampleSize)) {
-      reset();
+    if (added) {
+      if (agingInterval == 0) {
+        if (++size == sampleSize) {
+          reset();
+        }
+      } else if (++size == agingInterval) {
+        size = 0;
+        ageBlock();
+      }
+    }
+  }
+
+  /**
+   * Raises the popularity of the element to at least the given frequency, up to the maximum (15),
+   * such as when restoring an estimate that was previously observed. Unlike {@link #increment},
+   * this bypasses the doorkeeper and does not count towards the sample period that triggers the
+   * aging, so that the restored estimate matches the saved one except for hash collisions.
+   *
+   * @param e the element whose popularity is restored
+   * @param frequency the estimated number of occurrences of the element
+   */
+  void restoreFrequency(E e, int frequency) {
+    if (isNotInitialized() || (frequency <= 0)) {
+      return;
+    }
+
+    long count = Math.min(frequency, 15);
+    int blockHash = spread(e.hashCode());
+    int counterHash = rehash(blockHash);
+    int block = (blockHash & blockMask) << 3;
+    for (int i = 0; i < 4; i++) {
+      int h = counterHash >>> (i << 3);
+      int offset = ((h >>> 1) & 15) << 2;
+      int slot = block + (h & 1) + (i << 1);
+      if (((table[slot] >>> offset) & 0xfL) < count) {
+        table[slot] = (table[slot] & ~(0xfL << offset)) | (count << offset);
+      }
+    }
+  }
+
+  /**
+   * Returns the estimated penalty of loading the element, as a logarithmic level up to the maximum
+   * (15), or zero if not recorded.
+   *
+   * @param e the element whose penalty is requested
+   * @return the level of the most recently recorded load time of the element
+   */
+  public int penalty(E e) {
+    byte[] levels = penalties;
+    if (levels == null) {
+      return 0;
+    }
+    int hash = rehash(spread(e.hashCode()));
+    return levels[hash & (levels.length - 1)];
+  }
+
+  /**
+   * Records the penalty of loading the element, replacing the previous estimate. This method may
+   * be called concurrently with the other operations.
+   *
+   * @param e the element that was loaded
+   * @param loadTime the duration of the load in nanoseconds
+   */
+  public void recordPenalty(E e, long loadTime) {
+    byte[] levels = penalties;
+    if (levels == null) {
+      return;
     }
+    int hash = rehash(spread(e.hashCode()));
+    levels[hash & (levels.length - 1)] = (byte) penaltyLevel(loadTime);
+  }
+
+  /**
+   * Returns the logarithmic level of the duration, where each level is a fourfold increase starting
+   * from a microsecond and the maximum (15) is reached at roughly five minutes.
+   */
+  static int penaltyLevel(long loadTime) {
+    long micros = Math.max(0, loadTime) >>> 10;
+    return Math.min(15, (65 - Long.numberOfLeadingZeros(micros)) >>> 1);
   }
 
   /** Applies a supplemental hash function to defend against a poor quality hash. */
@@ -198,6 +365,35 @@ final class FrequencySketch<E> {
     return x;
   }
 
+  /** Returns if the element's bits are set in the doorkeeper. */
+  boolean doorkeeperContains(int blockHash) {
+    long hash = blockHash * DOORKEEPER_SEED;
+    long mask = doorkeeperMask(hash);
+    return (doorkeeper[(int) (hash >>> doorkeeperShift)] & mask) == mask;
+  }
+
+  /**
+   * Sets the element's bits in the doorkeeper.
+   *
+   * @param blockHash the element's supplemental hash
+   * @return if the element was not already present and was added
+   */
+  boolean doorkeeperPut(int blockHash) {
+    long hash = blockHash * DOORKEEPER_SEED;
+    long mask = doorkeeperMask(hash);
+    int index = (int) (hash >>> doorkeeperShift);
+    if ((doorkeeper[index] & mask) == mask) {
+      return false;
+    }
+    doorkeeper[index] |= mask;
+    return true;
+  }
+
+  /** Returns the four bits within a doorkeeper word that represent the element. */
+  static long doorkeeperMask(long hash) {
+    return (1L << hash) | (1L << (hash >>> 6)) | (1L << (hash >>> 12)) | (1L << (hash >>> 18));
+  }
+
   /**
    * Increments the specified counter by 1 if it is not already at the maximum value (15).
    *
@@ -215,13 +411,34 @@ final class FrequencySketch<E> {
     return false;
   }
 
+  /** Reduces the counters in the next block of the sweep by half of their original value. */
+  void ageBlock() {
+    int start = agingBlock << 3;
+    for (int i = start; i < start + 8; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    if (hasDoorkeeper) {
+      // Clears the doorkeeper's words in proportion to the sweep, emptying it once per pass
+      int blocks = blockMask + 1;
+      int from = (int) (((long) agingBlock * doorkeeper.length) / blocks);
+      int to = (int) (((agingBlock + 1L) * doorkeeper.length) / blocks);
+      Arrays.fill(doorkeeper, from, to, 0L);
+    }
+    agingBlock = (agingBlock + 1) & blockMask;
+  }
+
   /** Reduces every counter by half of its original value. */
   void reset() {
+    // A simple loop shape that C2 auto-vectorizes into SIMD instructions on recent JDKs, whereas
+    // manual unrolling or splitting the counting and halving into separate passes prevents it
     @Var int count = 0;
     for (int i = 0; i < table.length; i++) {
       count += Long.bitCount(table[i] & ONE_MASK);
       table[i] = (table[i] >>> 1) & RESET_MASK;
     }
-    size = (size - (count >>> 2)) >>> 1;
+    size = (agingInterval == 0) ? (size - (count >>> 2)) >>> 1 : 0;
+    if (hasDoorkeeper) {
+      Arrays.fill(doorkeeper, 0L);
+    }
   }
 }
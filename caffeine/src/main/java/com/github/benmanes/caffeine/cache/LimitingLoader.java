@@ -0,0 +1,241 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A loader that performs its loads, reloads, and bulk loads only while holding a permit from a
+ * {@link LoadLimiter}. A synchronous load blocks until it is granted a permit, whereas an
+ * asynchronous load returns a future immediately and is started by the executor once its turn
+ * comes. The permit is held until the loader's future completes and the tasks that the loader
+ * submitted to the executor have finished, so that cancelling the future, such as when a load times
+ * out, does not release the permit while a blocking {@link CacheLoader#load} is still running.
+ * <p>
+ * The bulk load methods are overridden only by the {@link BulkLoader} subclass, which is used when
+ * the delegate implements them, so that the cache's detection of bulk loading is preserved.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+class LimitingLoader<K, V> implements CacheLoader<K, V> {
+  static final Logger logger = System.getLogger(LimitingLoader.class.getName());
+
+  final AsyncCacheLoader<? super K, V> delegate;
+  final LoadLimiter limiter;
+  final Executor executor;
+
+  LimitingLoader(AsyncCacheLoader<? super K, V> delegate, LoadLimiter limiter, Executor executor) {
+    this.delegate = requireNonNull(delegate);
+    this.executor = requireNonNull(executor);
+    this.limiter = requireNonNull(limiter);
+  }
+
+  /** Returns a loader that is limited by the permits, which bulk loads if the delegate does. */
+  static <K, V> LimitingLoader<K, V> create(AsyncCacheLoader<? super K, V> delegate,
+      LoadLimiter limiter, Executor executor) {
+    return LocalAsyncLoadingCache.canBulkLoad(delegate)
+        ? new BulkLoader<>(delegate, limiter, executor)
+        : new LimitingLoader<>(delegate, limiter, executor);
+  }
+
+  @Override
+  public @Nullable V load(K key) throws Exception {
+    if (!(delegate instanceof CacheLoader<?, ?>)) {
+      return CoalescingLoader.await(asyncLoad(key, executor));
+    }
+    @SuppressWarnings("unchecked")
+    var loader = (CacheLoader<? super K, V>) delegate;
+    return limit(() -> loader.load(key));
+  }
+
+  @Override
+  public CompletableFuture<? extends V> asyncLoad(K key, Executor executor) {
+    return limit(/* refresh */ false, permit -> delegate.asyncLoad(key, permit), executor);
+  }
+
+  @Override
+  public CompletableFuture<? extends V> asyncReload(K key, V oldValue, Executor executor) {
+    return limit(/* refresh */ true,
+        permit -> delegate.asyncReload(key, oldValue, permit), executor);
+  }
+
+  /** Performs the synchronous task while holding a permit, blocking until one is granted. */
+  <T> T limit(Callable<T> task) throws Exception {
+    var permit = limiter.acquire();
+    if (permit == null) {
+      throw new RejectedExecutionException("The load was rejected as the queue is full");
+    }
+    try {
+      permit.get();
+    } catch (InterruptedException e) {
+      if (!limiter.cancel(permit)) {
+        limiter.release();
+      }
+      throw e;
+    }
+    try {
+      return task.call();
+    } finally {
+      limiter.release();
+    }
+  }
+
+  /** Performs the asynchronous task once a permit is granted, holding it until it completes. */
+  <T> CompletableFuture<T> limit(boolean refresh,
+      Operation<? extends CompletableFuture<T>> task, Executor executor) {
+    var permit = limiter.acquire();
+    if (permit == null) {
+      return CompletableFuture.failedFuture(refresh
+          ? new CancellationException("The refresh was skipped as the queue is full")
+          : new RejectedExecutionException("The load was rejected as the queue is full"));
+    } else if (permit.isDone()) {
+      return run(task, executor);
+    }
+
+    var future = new CompletableFuture<T>();
+    permit.thenRun(() -> execute(executor, () -> {
+      if (future.isDone()) {
+        limiter.release();
+        return;
+      }
+      run(task, executor).whenComplete((result, error) -> {
+        if (error == null) {
+          future.complete(result);
+        } else {
+          future.completeExceptionally(error);
+        }
+      });
+    }));
+    future.whenComplete((result, error) -> limiter.cancel(permit));
+    return future;
+  }
+
+  /**
+   * Starts the task, which must already hold a permit, and releases the permit once the task's
+   * future has completed and the work that it submitted to the executor has finished.
+   */
+  <T> CompletableFuture<T> run(Operation<? extends CompletableFuture<T>> task, Executor executor) {
+    var permit = new Permit(executor);
+    try {
+      var future = requireNonNull(task.start(permit), "Null future");
+      future.whenComplete((result, error) -> permit.finish());
+      return future;
+    } catch (Throwable t) {
+      permit.finish();
+      return CompletableFuture.failedFuture(t);
+    }
+  }
+
+  /** Submits the task to the executor, or runs it on the calling thread if rejected. */
+  static void execute(Executor executor, Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (Throwable t) {
+      logger.log(Level.ERROR, "Exception thrown when submitting a limited load", t);
+      task.run();
+    }
+  }
+
+  /** An asynchronous operation that is started with the executor that tracks its permit. */
+  @FunctionalInterface
+  interface Operation<T> {
+    T start(Executor executor) throws Exception;
+  }
+
+  /**
+   * A held permit that is released once the operation's future has completed and the tasks that it
+   * submitted have finished. A task that is submitted after the permit was released is not tracked.
+   */
+  @SuppressWarnings("serial")
+  final class Permit extends AtomicInteger implements Executor {
+    final Executor executor;
+
+    Permit(Executor executor) {
+      super(1);
+      this.executor = requireNonNull(executor);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      if (getAndUpdate(count -> (count > 0) ? (count + 1) : count) <= 0) {
+        executor.execute(task);
+        return;
+      }
+      try {
+        executor.execute(() -> {
+          try {
+            task.run();
+          } finally {
+            finish();
+          }
+        });
+      } catch (Throwable t) {
+        finish();
+        throw t;
+      }
+    }
+
+    /** Marks the future or a task as finished, releasing the permit if it was the last. */
+    void finish() {
+      if (decrementAndGet() == 0) {
+        limiter.release();
+      }
+    }
+  }
+
+  /** A limited loader that also limits the bulk loads of a delegate that implements them. */
+  static final class BulkLoader<K, V> extends LimitingLoader<K, V> {
+
+    BulkLoader(AsyncCacheLoader<? super K, V> delegate, LoadLimiter limiter, Executor executor) {
+      super(delegate, limiter, executor);
+    }
+
+    @Override
+    public Map<? extends K, ? extends V> loadAll(Set<? extends K> keys) throws Exception {
+      if ((delegate instanceof CacheLoader<?, ?>)
+          && LocalLoadingCache.hasLoadAll((CacheLoader<?, ?>) delegate)) {
+        @SuppressWarnings("unchecked")
+        var loader = (CacheLoader<? super K, V>) delegate;
+        @SuppressWarnings("unchecked")
+        var loaded = (Map<? extends K, ? extends V>) limit(() -> loader.loadAll(keys));
+        return loaded;
+      }
+      return CoalescingLoader.await(asyncLoadAll(keys, executor));
+    }
+
+    @Override
+    public CompletableFuture<? extends Map<? extends K, ? extends V>> asyncLoadAll(
+        Set<? extends K> keys, Executor executor) {
+      @SuppressWarnings("unchecked")
+      var loaded = (CompletableFuture<? extends Map<? extends K, ? extends V>>) limit(
+          /* refresh */ false, permit -> delegate.asyncLoadAll(keys, permit), executor);
+      return loaded;
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.cache.Caffeine.requireArgument;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+
+/**
+ * A limit on the number of loads that a cache performs concurrently. A load, reload, or bulk load
+ * that exceeds the limit waits in a first-in, first-out queue until an in-flight operation
+ * completes, so that a burst of misses, such as when a cache is cold, does not overwhelm the
+ * backing resource. The limiter is configured on a cache by {@link Caffeine#loadLimiter} and its
+ * methods may be used to monitor the load, such as by exporting them as metrics.
+ * <p>
+ * If the queue has a maximum length then the excess work is shed once it is full. A load fails
+ * fast with a {@link java.util.concurrent.RejectedExecutionException}, whereas a refresh is
+ * skipped so that the present value continues to be served until it is refreshed or expires. A
+ * skipped refresh is treated as if it was cancelled.
+ * <p>
+ * An instance may be shared by multiple caches, for example those backed by the same database, in
+ * which case the limit applies to their loads collectively.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@NullMarked
+public final class LoadLimiter {
+  final int maximumQueueLength;
+  final int maximumConcurrency;
+  final ReentrantLock lock;
+  final LongAdder rejected;
+
+  @GuardedBy("lock")
+  final ArrayDeque<CompletableFuture<@Nullable Void>> waiters;
+  @GuardedBy("lock")
+  int permits;
+
+  LoadLimiter(int maximumConcurrency, int maximumQueueLength) {
+    this.maximumQueueLength = maximumQueueLength;
+    this.maximumConcurrency = maximumConcurrency;
+    this.waiters = new ArrayDeque<>();
+    this.permits = maximumConcurrency;
+    this.lock = new ReentrantLock();
+    this.rejected = new LongAdder();
+  }
+
+  /**
+   * Returns a limiter that allows up to {@code maximumConcurrency} loads to be in-flight, where the
+   * excess loads wait without a bound on the length of the queue.
+   *
+   * @param maximumConcurrency the maximum number of loads that may be performed concurrently
+   * @return a limiter with the specified concurrency and an unbounded queue
+   * @throws IllegalArgumentException if {@code maximumConcurrency} is not positive
+   */
+  public static LoadLimiter of(int maximumConcurrency) {
+    return of(maximumConcurrency, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns a limiter that allows up to {@code maximumConcurrency} loads to be in-flight and up to
+   * {@code maximumQueueLength} loads to wait, where any further loads are shed.
+   *
+   * @param maximumConcurrency the maximum number of loads that may be performed concurrently
+   * @param maximumQueueLength the maximum number of loads that may wait for their turn, or zero if
+   *        the excess loads should be shed immediately
+   * @return a limiter with the specified concurrency and queue length
+   * @throws IllegalArgumentException if {@code maximumConcurrency} is not positive or if
+   *         {@code maximumQueueLength} is negative
+   */
+  public static LoadLimiter of(int maximumConcurrency, int maximumQueueLength) {
+    requireArgument(maximumConcurrency > 0,
+        "maximum concurrency must be positive: %s", maximumConcurrency);
+    requireArgument(maximumQueueLength >= 0,
+        "maximum queue length must not be negative: %s", maximumQueueLength);
+    return new LoadLimiter(maximumConcurrency, maximumQueueLength);
+  }
+
+  /** Returns the maximum number of loads that may be performed concurrently. */
+  public int maximumConcurrency() {
+    return maximumConcurrency;
+  }
+
+  /** Returns the maximum number of loads that may wait for their turn. */
+  public int maximumQueueLength() {
+    return maximumQueueLength;
+  }
+
+  /** Returns the number of loads that are currently being performed. */
+  public int inFlightCount() {
+    lock.lock();
+    try {
+      return maximumConcurrency - permits;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of loads that are currently waiting for their turn. */
+  public int queueDepth() {
+    lock.lock();
+    try {
+      return waiters.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the total number of loads and refreshes that were shed because the queue was full. */
+  public long rejectedCount() {
+    return rejected.sum();
+  }
+
+  /**
+   * Acquires a permit to perform a load. The returned future is complete if the permit was granted
+   * immediately and otherwise is completed when it is granted, unless the caller cancels it first.
+   *
+   * @return the future that is completed when the permit is granted, or null if the queue is full
+   */
+  @Nullable CompletableFuture<@Nullable Void> acquire() {
+    lock.lock();
+    try {
+      if (permits > 0) {
+        permits--;
+        return CompletableFuture.completedFuture(null);
+      } else if (waiters.size() >= maximumQueueLength) {
+        rejected.increment();
+        return null;
+      }
+      var waiter = new CompletableFuture<@Nullable Void>();
+      waiters.add(waiter);
+      return waiter;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Releases a permit by granting it to the oldest waiter, or by returning it if none remain. */
+  void release() {
+    for (;;) {
+      CompletableFuture<@Nullable Void> waiter;
+      lock.lock();
+      try {
+        waiter = waiters.poll();
+        if (waiter == null) {
+          permits++;
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+      if (waiter.complete(null)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Withdraws the waiter from the queue if its permit has not been granted.
+   *
+   * @return if the waiter was withdrawn, or false if the caller holds the permit
+   */
+  boolean cancel(CompletableFuture<@Nullable Void> waiter) {
+    if (!waiter.cancel(false)) {
+      return false;
+    }
+    lock.lock();
+    try {
+      waiters.remove(waiter);
+    } finally {
+      lock.unlock();
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{maximumConcurrency=" + maximumConcurrency
+        + ", maximumQueueLength=" + maximumQueueLength + ", inFlight=" + inFlightCount()
+        + ", queueDepth=" + queueDepth() + "}";
+  }
+}
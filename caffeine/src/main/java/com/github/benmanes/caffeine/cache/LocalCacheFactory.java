@@ -15,6 +15,8 @@
  */
 package com.github.benmanes.caffeine.cache;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
@@ -46,13 +48,24 @@ interface LocalCacheFactory {
       @Nullable AsyncCacheLoader<? super K, V> cacheLoader, boolean isAsync) {
     var className = getClassName(builder);
     var factory = loadFactory(className);
+    BoundedLocalCache<K, V> cache;
     try {
-      return factory.newInstance(builder, cacheLoader, isAsync);
+      cache = factory.newInstance(builder, cacheLoader, isAsync);
     } catch (RuntimeException | Error e) {
       throw e;
     } catch (Throwable t) {
       throw new IllegalStateException(className, t);
     }
+
+    var snapshotPath = builder.getSnapshotPath();
+    if (snapshotPath != null) {
+      try {
+        cache.restoreSnapshot(snapshotPath);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return cache;
   }
 
   static String getClassName(Caffeine<?, ?> builder) {
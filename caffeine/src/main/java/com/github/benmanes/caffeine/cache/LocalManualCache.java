@@ -102,7 +102,7 @@ interface LocalManualCache<K, V> extends Cache<K, V> {
     @Var boolean success = false;
     try {
       var loaded = mappingFunction.apply(Collections.unmodifiableSet(keysToLoad));
-      loaded.forEach(cache()::put);
+      cache().putAll(loaded);
       for (K key : keysToLoad) {
         V value = loaded.get(key);
         if (value == null) {
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * A dedicated thread that performs the cache's maintenance work, such as applying the buffered
+ * reads and writes to the eviction policy. By default the maintenance is submitted to the
+ * {@link Caffeine#executor}, where it may be delayed behind the application's tasks when that
+ * executor is saturated. A delayed drain causes the write buffer to fill and the writers to perform
+ * the maintenance themselves, so a dedicated thread may offer more predictable write latencies.
+ * <p>
+ * The thread parks while there is no pending work and is started on demand. It terminates after a
+ * period of inactivity so that an unused instance does not retain a thread. A single instance may
+ * be shared by multiple caches, as each cache has at most one maintenance task pending at a time.
+ * <p>
+ * The time that a maintenance task waited to be run and the time spent running it are recorded, so
+ * that the drain latency can be monitored.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@NullMarked
+public final class MaintenanceThread implements Executor {
+  static final long KEEP_ALIVE_SECONDS = 60;
+
+  final ThreadPoolExecutor executor;
+  final AtomicLong maximumDelay;
+  final LongAdder totalDuration;
+  final LongAdder totalDelay;
+  final LongAdder count;
+
+  MaintenanceThread(ThreadFactory threadFactory) {
+    executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), threadFactory);
+    executor.allowCoreThreadTimeOut(true);
+    maximumDelay = new AtomicLong();
+    totalDuration = new LongAdder();
+    totalDelay = new LongAdder();
+    count = new LongAdder();
+  }
+
+  /**
+   * Returns the maintenance thread that is shared by all of the caches that do not specify their
+   * own. This is a daemon platform thread.
+   *
+   * @return the shared maintenance thread
+   */
+  public static MaintenanceThread shared() {
+    return SharedMaintenanceThread.INSTANCE;
+  }
+
+  /**
+   * Returns a maintenance thread that is created by the given factory. For example, a virtual
+   * thread may be used by specifying {@code Thread.ofVirtual().factory()}.
+   *
+   * @param threadFactory the factory to create the thread with
+   * @return a maintenance thread that is created by the factory
+   * @throws NullPointerException if the thread factory is null
+   */
+  public static MaintenanceThread create(ThreadFactory threadFactory) {
+    return new MaintenanceThread(requireNonNull(threadFactory));
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    requireNonNull(task);
+    long scheduledTime = System.nanoTime();
+    executor.execute(() -> {
+      long startTime = System.nanoTime();
+      try {
+        task.run();
+      } finally {
+        long delay = startTime - scheduledTime;
+        totalDuration.add(System.nanoTime() - startTime);
+        maximumDelay.accumulateAndGet(delay, Math::max);
+        totalDelay.add(delay);
+        count.increment();
+      }
+    });
+  }
+
+  /**
+   * Returns the number of maintenance tasks that were run.
+   *
+   * @return the number of maintenance tasks that were run
+   */
+  public long drainCount() {
+    return count.sum();
+  }
+
+  /**
+   * Returns the total time that the maintenance tasks waited between being scheduled and being run.
+   *
+   * @return the total time that the maintenance tasks waited to be run
+   */
+  public Duration totalDrainDelay() {
+    return Duration.ofNanos(totalDelay.sum());
+  }
+
+  /**
+   * Returns the longest time that a maintenance task waited between being scheduled and being run.
+   *
+   * @return the longest time that a maintenance task waited to be run
+   */
+  public Duration maximumDrainDelay() {
+    return Duration.ofNanos(maximumDelay.get());
+  }
+
+  /**
+   * Returns the total time spent running the maintenance tasks.
+   *
+   * @return the total time spent running the maintenance tasks
+   */
+  public Duration totalDrainTime() {
+    return Duration.ofNanos(totalDuration.sum());
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{drainCount=" + drainCount()
+        + ", totalDrainDelay=" + totalDrainDelay() + ", maximumDrainDelay=" + maximumDrainDelay()
+        + ", totalDrainTime=" + totalDrainTime() + "}";
+  }
+
+  static final class SharedMaintenanceThread {
+    static final MaintenanceThread INSTANCE = new MaintenanceThread(task -> {
+      var thread = new Thread(task, "Caffeine-Maintenance");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    private SharedMaintenanceThread() {}
+  }
+}
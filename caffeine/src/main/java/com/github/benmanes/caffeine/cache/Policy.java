@@ -17,6 +17,8 @@ package com.github.benmanes.caffeine.cache;
 
 import static com.github.benmanes.caffeine.cache.Caffeine.toNanosSaturated;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ConcurrentModificationException;
 import java.util.Map;
@@ -88,6 +90,24 @@ public interface Policy<K, V> {
    */
   Map<K, CompletableFuture<V>> refreshes();
 
+  /**
+   * Writes the cache's entries to the file in a binary format that can be used to populate a new
+   * cache instance by {@link Caffeine#restoreSnapshot(Path)}. Along with the keys and values, the
+   * snapshot retains each entry's position in the eviction policy, its popularity, and the time
+   * remaining until it expires or may be refreshed. An in-flight asynchronous computation is
+   * omitted and the keys and values must be {@link java.io.Serializable}.
+   * <p>
+   * The entries are captured as a point-in-time view without blocking the cache's read and write
+   * operations while the snapshot is written out.
+   *
+   * @param path the file to write the snapshot to
+   * @throws IOException if an I/O error occurs or an entry is not serializable
+   * @throws UnsupportedOperationException if the implementation does not support snapshots
+   */
+  default void writeSnapshot(Path path) throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
   /**
    * Returns access to perform operations based on the maximum size or maximum weight eviction
    * policy. If the cache was not constructed with a size-based bound or the implementation does
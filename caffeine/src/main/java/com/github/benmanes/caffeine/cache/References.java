@@ -135,6 +135,61 @@ final class References {
     }
   }
 
+  /**
+   * A reusable adapter used for looking up an entry in the cache where the keys are weakly held,
+   * which avoids allocating a {@link LookupKeyReference} for each read. Each thread has its own
+   * instance that is acquired for a single lookup and released afterwards, so it must never be
+   * stored in the cache. The lookup compares the keys by identity and does not call into user code,
+   * so a thread cannot reenter a lookup while its instance is in use. This should not be used by a
+   * virtual thread, which would allocate a thread-local entry and an instance for its short life.
+   */
+  static final class ReusableLookupKeyReference implements InternalReference<Object> {
+    static final ThreadLocal<ReusableLookupKeyReference> INSTANCE =
+        ThreadLocal.withInitial(ReusableLookupKeyReference::new);
+
+    private @Nullable Object key;
+    private int hashCode;
+
+    /** Returns this thread's instance after setting it to refer to the key. */
+    public static ReusableLookupKeyReference acquire(Object key) {
+      var lookupKey = INSTANCE.get();
+      lookupKey.hashCode = System.identityHashCode(key);
+      lookupKey.key = requireNonNull(key);
+      return lookupKey;
+    }
+
+    /** Clears the key so that it is not retained by this thread after the lookup. */
+    public void release() {
+      key = null;
+    }
+
+    @Override
+    public @Nullable Object get() {
+      return key;
+    }
+
+    @Override
+    public Object getKeyReference() {
+      return this;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object object) {
+      return referenceEquals(object);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(US,
+          "%s{key=%s, hashCode=%d}", getClass().getSimpleName(), get(), hashCode);
+    }
+  }
+
   /**
    * A short-lived adapter used for looking up an entry in the cache where the keys are weakly held.
    * This {@linkplain InternalReference} implementation is not suitable for storing in the cache as
@@ -22,10 +22,14 @@ import java.time.Duration;
 
 import org.jspecify.annotations.Nullable;
 
+import com.google.errorprone.annotations.Var;
+
 /**
  * Serializes the configuration of the cache, reconstituting it as a {@link Cache},
  * {@link LoadingCache}, {@link AsyncCache}, or {@link AsyncLoadingCache} using {@link Caffeine}
- * upon deserialization. The data held by the cache is not retained.
+ * upon deserialization. The data held by the cache is not retained. A dedicated
+ * {@link MaintenanceThread} is not serializable, so it is recorded as being used and the
+ * {@link MaintenanceThread#shared()} instance is used in its place.
  *
  * @author ben.manes@gmail.com (Ben Manes)
  */
@@ -38,19 +42,60 @@ final class SerializationProxy<K, V> implements Serializable {
   boolean weakValues;
   boolean softValues;
   boolean isRecordingStats;
+  boolean maintenanceThread;
+  boolean weightAwareAdmission;
+  boolean costAwareEviction;
+  boolean compactFrequencySketch;
+  boolean frequencySketchDoorkeeper;
   long refreshAfterWriteNanos;
   long expiresAfterWriteNanos;
   long expiresAfterAccessNanos;
   long maximumSize = UNSET_INT;
   long maximumWeight = UNSET_INT;
+  int coalesceBatchSize = UNSET_INT;
+  int refreshAheadFrequency = UNSET_INT;
+  int refreshAheadConcurrency;
+  int loadConcurrency = UNSET_INT;
+  long coalesceDelayNanos;
+  long refreshTimeoutNanos;
+  long loadTimeoutNanos;
+  double probabilisticRefreshBeta;
+  double hedgePercentile;
+  int loadQueueLength;
 
   @Nullable Ticker ticker;
+  @Nullable WindowOptimizer windowOptimizer;
   @Nullable Expiry<?, ?> expiry;
   @Nullable Weigher<?, ?> weigher;
   @Nullable AsyncCacheLoader<?, ?> cacheLoader;
   @Nullable RemovalListener<?, ?> removalListener;
   @Nullable RemovalListener<?, ?> evictionListener;
 
+  /** Sets the loader, recording the settings of its wrappers in place of the wrappers. */
+  void setCacheLoader(@Nullable AsyncCacheLoader<?, ?> loader) {
+    @Var AsyncCacheLoader<?, ?> unwrapped = loader;
+    if (unwrapped instanceof CoalescingLoader<?, ?>) {
+      var coalescing = (CoalescingLoader<?, ?>) unwrapped;
+      coalesceDelayNanos = coalescing.maximumDelayNanos;
+      coalesceBatchSize = coalescing.maximumBatchSize;
+      unwrapped = coalescing.delegate;
+    }
+    if (unwrapped instanceof DeadlineLoader<?, ?>) {
+      var deadline = (DeadlineLoader<?, ?>) unwrapped;
+      refreshTimeoutNanos = deadline.refreshTimeoutNanos;
+      loadTimeoutNanos = deadline.loadTimeoutNanos;
+      hedgePercentile = deadline.hedgePercentile;
+      unwrapped = deadline.delegate;
+    }
+    if (unwrapped instanceof LimitingLoader<?, ?>) {
+      var limiting = (LimitingLoader<?, ?>) unwrapped;
+      loadQueueLength = limiting.limiter.maximumQueueLength;
+      loadConcurrency = limiting.limiter.maximumConcurrency;
+      unwrapped = limiting.delegate;
+    }
+    cacheLoader = unwrapped;
+  }
+
   Caffeine<Object, Object> recreateCaffeine() {
     var builder = Caffeine.newBuilder();
     if (ticker != null) {
@@ -59,6 +104,9 @@ final class SerializationProxy<K, V> implements Serializable {
     if (isRecordingStats) {
       builder.recordStats();
     }
+    if (maintenanceThread) {
+      builder.maintenanceThread(MaintenanceThread.shared());
+    }
     if (maximumSize != UNSET_INT) {
       builder.maximumSize(maximumSize);
     }
@@ -68,6 +116,21 @@ final class SerializationProxy<K, V> implements Serializable {
       builder.maximumWeight(maximumWeight);
       builder.weigher(castedWeigher);
     }
+    if (weightAwareAdmission) {
+      builder.weightAwareAdmission();
+    }
+    if (costAwareEviction) {
+      builder.costAwareEviction();
+    }
+    if (compactFrequencySketch) {
+      builder.compactFrequencySketch();
+    }
+    if (frequencySketchDoorkeeper) {
+      builder.frequencySketchDoorkeeper();
+    }
+    if (windowOptimizer != null) {
+      builder.windowOptimizer(windowOptimizer);
+    }
     if (expiry != null) {
       builder.expireAfter(expiry);
     }
@@ -80,6 +143,12 @@ final class SerializationProxy<K, V> implements Serializable {
     if (refreshAfterWriteNanos > 0) {
       builder.refreshAfterWrite(Duration.ofNanos(refreshAfterWriteNanos));
     }
+    if (probabilisticRefreshBeta > 0) {
+      builder.probabilisticRefresh(probabilisticRefreshBeta);
+    }
+    if (refreshAheadFrequency != UNSET_INT) {
+      builder.refreshAhead(refreshAheadFrequency, refreshAheadConcurrency);
+    }
     if (weakKeys) {
       builder.weakKeys();
     }
@@ -89,6 +158,21 @@ final class SerializationProxy<K, V> implements Serializable {
     if (softValues) {
       builder.softValues();
     }
+    if (coalesceBatchSize != UNSET_INT) {
+      builder.coalesceLoads(coalesceBatchSize, Duration.ofNanos(coalesceDelayNanos));
+    }
+    if (loadTimeoutNanos > 0) {
+      builder.loadTimeout(Duration.ofNanos(loadTimeoutNanos));
+    }
+    if (refreshTimeoutNanos > 0) {
+      builder.refreshTimeout(Duration.ofNanos(refreshTimeoutNanos));
+    }
+    if (hedgePercentile > 0) {
+      builder.hedgeLoads(hedgePercentile);
+    }
+    if (loadConcurrency != UNSET_INT) {
+      builder.loadLimiter(LoadLimiter.of(loadConcurrency, loadQueueLength));
+    }
     if (removalListener != null) {
       builder.removalListener(removalListener);
     }
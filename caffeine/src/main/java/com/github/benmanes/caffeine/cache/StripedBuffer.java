@@ -22,7 +22,9 @@ package com.github.benmanes.caffeine.cache;
 
 import static com.github.benmanes.caffeine.cache.Caffeine.ceilingPowerOfTwo;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.invoke.VarHandle;
 import java.util.Arrays;
 import java.util.function.Consumer;
@@ -81,9 +83,16 @@ abstract class StripedBuffer<E> implements Buffer<E> {
    *
    * It is possible for a Buffer to become unused when threads that once hashed to it terminate, as
    * well as in the case where doubling the table causes no thread to hash to it under expanded
-   * mask. We do not try to detect or remove buffers, under the assumption that for long-running
-   * instances, observed contention levels will recur, so the buffers will eventually be needed
-   * again; and for short-lived ones, it does not matter.
+   * mask. The consumer halves the table after many consecutive drains without any contention being
+   * observed by the producers, which lets the remaining producers hash into fewer buffers with
+   * better locality. The buffers in the discarded half were just drained, so only an element that
+   * was concurrently added to one of them is lost, which is acceptable as the buffer is lossy.
+   *
+   * Virtual threads are multiplexed onto a small number of carrier threads, so at most that many
+   * producers can contend at once even when there are millions of threads. The carrier is not
+   * observable and a thread does not retain a probe across offers, so a virtual thread is hashed by
+   * its id like a platform thread, but the table is not expanded beyond the number of CPUs on its
+   * behalf. This avoids growing the table to its maximum size due to the many distinct hash codes.
    */
 
   static final VarHandle TABLE_BUSY;
@@ -94,6 +103,15 @@ abstract class StripedBuffer<E> implements Buffer<E> {
   /** The bound on the table size. */
   static final int MAXIMUM_TABLE_SIZE = 4 * ceilingPowerOfTwo(NCPU);
 
+  /** The bound on the table size when expanding on behalf of a virtual thread. */
+  static final int MAXIMUM_VIRTUAL_TABLE_SIZE = ceilingPowerOfTwo(NCPU);
+
+  /** The number of consecutive drains without contention before the table is halved. */
+  static final int SHRINK_THRESHOLD = 256;
+
+  /** The {@code Thread.isVirtual()} method, or null if not supported by the runtime. */
+  static final @Nullable MethodHandle IS_VIRTUAL = findIsVirtual();
+
   /** The maximum number of attempts when trying to expand the table. */
   static final int ATTEMPTS = 3;
 
@@ -103,6 +121,12 @@ abstract class StripedBuffer<E> implements Buffer<E> {
   /** Spinlock (locked via CAS) used when resizing and/or creating Buffers. */
   volatile int tableBusy;
 
+  /** Whether a producer observed contention since the last drain; racy but benign. */
+  boolean contended;
+
+  /** The number of consecutive drains without contention; accessed only by the consumer. */
+  int uncontendedDrains;
+
   /** CASes the tableBusy field from 0 to 1 to acquire lock. */
   final boolean casTableBusy() {
     return TABLE_BUSY.compareAndSet(this, 0, 1);
@@ -150,6 +174,10 @@ abstract class StripedBuffer<E> implements Buffer<E> {
    * @return {@code Buffer.SUCCESS}, {@code Buffer.FAILED}, or {@code Buffer.FULL}
    */
   final int expandOrRetry(E e, @Var int h, int increment, @Var boolean wasUncontended) {
+    if (!wasUncontended) {
+      recordContention();
+    }
+    int maximumTableSize = maximumTableSize(Thread.currentThread());
     @Var int result = Buffer.FAILED;
     @Var boolean collide = false; // True if last slot nonempty
     for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
@@ -183,9 +211,10 @@ abstract class StripedBuffer<E> implements Buffer<E> {
           wasUncontended = true;      // Continue after rehash
         } else if ((result = buffer.offer(e)) != Buffer.FAILED) {
           break;
-        } else if ((n >= MAXIMUM_TABLE_SIZE) || (table != buffers)) {
+        } else if ((n >= maximumTableSize) || (table != buffers)) {
           collide = false; // At max size or stale
         } else if (!collide) {
+          recordContention();
           collide = true;
         } else if ((tableBusy == 0) && casTableBusy()) {
           try {
@@ -221,6 +250,13 @@ abstract class StripedBuffer<E> implements Buffer<E> {
     return result;
   }
 
+  /** Records that a producer failed to add to its buffer due to a concurrent producer. */
+  final void recordContention() {
+    if (!contended) {
+      contended = true;
+    }
+  }
+
   @Override
   public void drainTo(Consumer<E> consumer) {
     Buffer<E>[] buffers = table;
@@ -232,6 +268,34 @@ abstract class StripedBuffer<E> implements Buffer<E> {
         buffer.drainTo(consumer);
       }
     }
+    shrinkIfUncontended(buffers);
+  }
+
+  /**
+   * Halves the table if the producers did not observe contention during many consecutive drains.
+   * This is performed by the consumer immediately after draining the buffers.
+   *
+   * @param buffers the table that was drained
+   */
+  final void shrinkIfUncontended(Buffer<E>[] buffers) {
+    if (contended) {
+      uncontendedDrains = 0;
+      contended = false;
+      return;
+    } else if ((buffers.length == 1) || (++uncontendedDrains < SHRINK_THRESHOLD)) {
+      return;
+    }
+
+    uncontendedDrains = 0;
+    if ((tableBusy == 0) && casTableBusy()) {
+      try {
+        if (table == buffers) {
+          table = Arrays.copyOf(buffers, buffers.length >>> 1);
+        }
+      } finally {
+        tableBusy = 0;
+      }
+    }
   }
 
   @Override
@@ -264,6 +328,33 @@ abstract class StripedBuffer<E> implements Buffer<E> {
     return writes;
   }
 
+  /** Returns the bound on the table size when expanding on behalf of the given thread. */
+  static int maximumTableSize(Thread thread) {
+    return isVirtual(thread) ? MAXIMUM_VIRTUAL_TABLE_SIZE : MAXIMUM_TABLE_SIZE;
+  }
+
+  /** Returns whether the thread is a virtual thread, or false if not supported by the runtime. */
+  static boolean isVirtual(Thread thread) {
+    if (IS_VIRTUAL == null) {
+      return false;
+    }
+    try {
+      return (boolean) IS_VIRTUAL.invokeExact(thread);
+    } catch (Throwable t) {
+      return false;
+    }
+  }
+
+  /** Returns the {@code Thread.isVirtual()} method handle, or null if not supported. */
+  static @Nullable MethodHandle findIsVirtual() {
+    try {
+      return MethodHandles.publicLookup().findVirtual(
+          Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
   /** Computes Stafford variant 13 of 64-bit mix function. */
   static long mix64(@Var long z) {
     z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
@@ -15,6 +15,14 @@
  */
 package com.github.benmanes.caffeine.cache;
 
+import static java.util.Objects.requireNonNull;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.LockSupport;
+
 import org.jspecify.annotations.NullMarked;
 
 /**
@@ -51,6 +59,33 @@ public interface Ticker {
   static Ticker disabledTicker() {
     return DisabledTicker.INSTANCE;
   }
+
+  /**
+   * Returns a ticker that reads a cached time that is refreshed by a background thread using
+   * {@link System#nanoTime} at the given resolution. Reading the cached time is cheaper than
+   * calling {@link System#nanoTime}, which may be significant when the cache is read at a very high
+   * rate, but the time lags behind the system's by up to the resolution. When used by a cache to
+   * determine when entries should be expired or refreshed, an entry may therefore be retained for
+   * up to the resolution beyond its configured duration.
+   * <p>
+   * The background thread is a platform daemon thread that wakes up once per resolution, such as a
+   * thousand times per second at a resolution of one millisecond. The tickers are shared so that
+   * the calls that request the same resolution return the same instance and are refreshed by a
+   * single thread, which terminates when that ticker is no longer reachable. Each distinct
+   * resolution requires its own thread, so an application should prefer to use one resolution.
+   *
+   * @param resolution the interval between refreshes of the cached time
+   * @return a ticker that reads a cached time that is periodically refreshed
+   * @throws IllegalArgumentException if the resolution is not positive or exceeds one second
+   * @throws NullPointerException if the resolution is null
+   */
+  static Ticker coarseTicker(Duration resolution) {
+    requireNonNull(resolution);
+    Caffeine.requireArgument(!resolution.isNegative() && !resolution.isZero()
+        && (resolution.compareTo(CoarseTicker.MAXIMUM_RESOLUTION) <= 0),
+        "resolution must be in the range (0s, 1s]: %s", resolution);
+    return CoarseTicker.start(resolution.toNanos());
+  }
 }
 
 enum SystemTicker implements Ticker {
@@ -68,3 +103,68 @@ enum DisabledTicker implements Ticker {
     return 0L;
   }
 }
+
+final class CoarseTicker implements Ticker {
+  static final Duration MAXIMUM_RESOLUTION = Duration.ofSeconds(1);
+  /** The reachable tickers by their resolution, so that each resolution is refreshed by a thread. */
+  static final ConcurrentMap<Long, WeakReference<CoarseTicker>> TICKERS =
+      new ConcurrentHashMap<>();
+
+  final long resolutionNanos;
+
+  volatile long nanos;
+
+  CoarseTicker(long resolutionNanos) {
+    this.resolutionNanos = resolutionNanos;
+    this.nanos = System.nanoTime();
+  }
+
+  /** Returns the ticker for the resolution, starting its thread if it is not already running. */
+  static CoarseTicker start(long resolutionNanos) {
+    var ticker = new CoarseTicker[1];
+    TICKERS.compute(resolutionNanos, (resolution, reference) -> {
+      ticker[0] = (reference == null) ? null : reference.get();
+      if (ticker[0] != null) {
+        return reference;
+      }
+      ticker[0] = new CoarseTicker(resolutionNanos);
+      var updater = new Updater(ticker[0]);
+      var thread = new Thread(updater, "Caffeine-CoarseTicker");
+      thread.setDaemon(true);
+      thread.start();
+      return updater.reference;
+    });
+    return ticker[0];
+  }
+
+  @Override public long read() {
+    return nanos;
+  }
+
+  @Override public String toString() {
+    return getClass().getSimpleName() + "{resolution=" + Duration.ofNanos(resolutionNanos) + "}";
+  }
+
+  /** Refreshes the cached time until the ticker is garbage collected. */
+  static final class Updater implements Runnable {
+    final WeakReference<CoarseTicker> reference;
+    final long resolutionNanos;
+
+    Updater(CoarseTicker ticker) {
+      this.reference = new WeakReference<>(ticker);
+      this.resolutionNanos = ticker.resolutionNanos;
+    }
+
+    @Override public void run() {
+      for (;;) {
+        LockSupport.parkNanos(this, resolutionNanos);
+        var ticker = reference.get();
+        if (ticker == null) {
+          TICKERS.remove(resolutionNanos, reference);
+          return;
+        }
+        ticker.nanos = System.nanoTime();
+      }
+    }
+  }
+}
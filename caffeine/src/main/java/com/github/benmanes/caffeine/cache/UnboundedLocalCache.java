@@ -1146,7 +1146,7 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
     Object writeReplace() {
       @SuppressWarnings("unchecked")
       var proxy = (SerializationProxy<K, V>) super.writeReplace();
-      proxy.cacheLoader = cacheLoader;
+      proxy.setCacheLoader(cacheLoader);
       return proxy;
     }
 
@@ -1260,7 +1260,7 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
       var proxy = new SerializationProxy<K, V>();
       proxy.isRecordingStats = cache.isRecordingStats();
       proxy.removalListener = cache.removalListener;
-      proxy.cacheLoader = cacheLoader;
+      proxy.setCacheLoader(cacheLoader);
       proxy.async = true;
       return proxy;
     }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * The strategy used by a size-bounded cache to adapt how much of its capacity is given to the
+ * admission window versus the main space. A larger window favors recency-biased workloads and a
+ * smaller one favors frequency-biased workloads, so the cache periodically samples its hit rate and
+ * adjusts the partitioning to follow the workload's characteristics as they change.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@NullMarked
+public enum WindowOptimizer {
+
+  /**
+   * Hill climbing that moves the partition in the direction which improved the hit rate, with a
+   * step size that decays between samples and restarts when the hit rate changes significantly.
+   * This is the default strategy and is well suited for workloads that are stable or that shift
+   * between a few distinct phases.
+   */
+  HILL_CLIMBING,
+
+  /**
+   * Adaptive Moment Estimation (Adam), which smooths the hit rate's gradient with momentum and
+   * scales each step by the gradient's recent variance. This typically converges more quickly and
+   * oscillates less than hill climbing when the workload is noisy or continuously shifts between
+   * recency and frequency bias. The algorithm is described in
+   * <a href="https://arxiv.org/abs/1412.6980">Adam: A Method for Stochastic Optimization</a>.
+   */
+  ADAM
+}
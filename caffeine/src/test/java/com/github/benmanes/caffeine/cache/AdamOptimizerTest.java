@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class AdamOptimizerTest {
+  static final double LEARNING_RATE = 100.0;
+
+  @Test
+  public void adjust_initial() {
+    var optimizer = new AdamOptimizer();
+    assertThat(optimizer.adjust(/* hitRateChange= */ 0.5, LEARNING_RATE))
+        .isEqualTo(-LEARNING_RATE);
+    assertThat(optimizer.primed).isTrue();
+  }
+
+  @Test
+  public void adjust_improving() {
+    var optimizer = new AdamOptimizer();
+    optimizer.adjust(/* hitRateChange= */ 0.5, LEARNING_RATE);
+    for (int i = 0; i < 10; i++) {
+      assertThat(optimizer.adjust(/* hitRateChange= */ 0.01, LEARNING_RATE))
+          .isWithin(0.01).of(-LEARNING_RATE);
+    }
+  }
+
+  @Test
+  public void adjust_worsening() {
+    var optimizer = new AdamOptimizer();
+    optimizer.adjust(/* hitRateChange= */ 0.5, LEARNING_RATE);
+    for (int i = 0; i < 3; i++) {
+      optimizer.adjust(/* hitRateChange= */ 0.01, LEARNING_RATE);
+    }
+
+    double amount = optimizer.adjust(/* hitRateChange= */ -0.01, LEARNING_RATE);
+    assertThat(amount).isLessThan(0.0);
+    assertThat(Math.abs(amount)).isLessThan(LEARNING_RATE);
+
+    // Reverses once the momentum has been overcome
+    amount = optimizer.adjust(/* hitRateChange= */ -0.01, LEARNING_RATE);
+    amount = optimizer.adjust(/* hitRateChange= */ -0.01, LEARNING_RATE);
+    assertThat(amount).isGreaterThan(0.0);
+    assertThat(optimizer.direction).isEqualTo(1.0);
+  }
+
+  @Test
+  public void reset() {
+    var optimizer = new AdamOptimizer();
+    optimizer.adjust(/* hitRateChange= */ 0.5, LEARNING_RATE);
+    optimizer.adjust(/* hitRateChange= */ 0.01, LEARNING_RATE);
+
+    optimizer.reset();
+    assertThat(optimizer.primed).isFalse();
+    assertThat(optimizer.moment).isEqualTo(0.0);
+    assertThat(optimizer.velocity).isEqualTo(0.0);
+    assertThat(optimizer.adjust(/* hitRateChange= */ 0.5, LEARNING_RATE))
+        .isEqualTo(-LEARNING_RATE);
+  }
+}
@@ -71,6 +71,7 @@ import java.io.IOException;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Arrays;
@@ -108,6 +109,7 @@ import com.github.benmanes.caffeine.cache.LocalCacheFactory.MethodHandleBasedFac
 import com.github.benmanes.caffeine.cache.Policy.Eviction;
 import com.github.benmanes.caffeine.cache.Policy.FixedExpiration;
 import com.github.benmanes.caffeine.cache.Policy.VarExpiration;
+import com.github.benmanes.caffeine.cache.References.ReusableLookupKeyReference;
 import com.github.benmanes.caffeine.cache.References.WeakKeyReference;
 import com.github.benmanes.caffeine.cache.SnapshotEntry.CompleteEntry;
 import com.github.benmanes.caffeine.cache.SnapshotEntry.ExpirableEntry;
@@ -146,7 +148,9 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Range;
 import com.google.common.collect.Streams;
+import com.google.common.testing.FakeTicker;
 import com.google.common.testing.GcFinalization;
+import com.google.common.testing.SerializableTester;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.Uninterruptibles;
 
@@ -1100,6 +1104,452 @@ public final class BoundedLocalCacheTest {
     assertThat(100.0 * allow / (allow + reject)).isIn(Range.open(0.2, 2.0));
   }
 
+  @Test
+  public void evict_weightAwareAdmission_reject() {
+    var cache = newWeightAwareCache();
+    var localCache = asBoundedLocalCache(cache);
+
+    // More popular than any one victim, but less than the victims that it would displace
+    Int candidate = Int.valueOf(-1);
+    for (int i = 0; i < 4; i++) {
+      localCache.frequencySketch().increment(candidate);
+    }
+    cache.put(candidate, Int.valueOf(50));
+    assertThat(cache.asMap()).doesNotContainKey(candidate);
+    assertThat(localCache.weightedSize()).isAtMost(100);
+  }
+
+  @Test
+  public void evict_weightAwareAdmission_admit() {
+    var cache = newWeightAwareCache();
+    var localCache = asBoundedLocalCache(cache);
+
+    // More popular than the victims that it would displace combined
+    Int candidate = Int.valueOf(-1);
+    for (int i = 0; i < 15; i++) {
+      localCache.frequencySketch().increment(candidate);
+    }
+    cache.put(candidate, Int.valueOf(4));
+    assertThat(cache.asMap()).containsKey(candidate);
+    assertThat(localCache.weightedSize()).isAtMost(100);
+  }
+
+  private static Cache<Int, Int> newWeightAwareCache() {
+    Cache<Int, Int> cache = Caffeine.newBuilder()
+        .weigher((Int key, Int value) -> value.intValue())
+        .executor(Runnable::run)
+        .weightAwareAdmission()
+        .maximumWeight(100)
+        .build();
+    for (int i = 0; i < 100; i++) {
+      cache.put(Int.valueOf(i), Int.valueOf(1));
+    }
+    for (int i = 0; i < 100; i++) {
+      cache.getIfPresent(Int.valueOf(i));
+      cache.getIfPresent(Int.valueOf(i));
+    }
+    cache.cleanUp();
+    return cache;
+  }
+
+  @Test
+  public void evict_costAwareAdmission() {
+    var ticker = new FakeTicker();
+    Cache<Int, Int> cache = Caffeine.newBuilder()
+        .executor(Runnable::run)
+        .costAwareEviction()
+        .ticker(ticker::read)
+        .maximumSize(100)
+        .build();
+    var localCache = asBoundedLocalCache(cache);
+    localCache.frequencySketch().ensureCapacity(100);
+
+    Int cheap = Int.valueOf(1);
+    Int expensive = Int.valueOf(2);
+    cache.get(cheap, key -> key);
+    cache.get(expensive, key -> {
+      ticker.advance(Duration.ofSeconds(1));
+      return key;
+    });
+
+    assertThat(localCache.frequencySketch().penalty(cheap)).isEqualTo(0);
+    assertThat(localCache.frequencySketch().penalty(expensive)).isGreaterThan(0);
+    assertThat(localCache.admit(expensive, cheap)).isTrue();
+    assertThat(localCache.admit(cheap, expensive)).isFalse();
+  }
+
+  @Test
+  public void evict_costAwareAdmission_coldCandidate() {
+    var ticker = new FakeTicker();
+    Cache<Int, Int> cache = Caffeine.newBuilder()
+        .executor(Runnable::run)
+        .costAwareEviction()
+        .ticker(ticker::read)
+        .maximumSize(100)
+        .build();
+    var localCache = asBoundedLocalCache(cache);
+    localCache.frequencySketch().ensureCapacity(100);
+
+    // An expensive candidate that was seen once is not randomly admitted over a hot victim
+    Int hot = Int.valueOf(1);
+    Int cold = Int.valueOf(2);
+    for (int i = 0; i < 15; i++) {
+      localCache.frequencySketch().increment(hot);
+    }
+    cache.get(cold, key -> {
+      ticker.advance(Duration.ofSeconds(1));
+      return key;
+    });
+
+    assertThat(localCache.frequencySketch().frequency(cold))
+        .isLessThan(BoundedLocalCache.ADMIT_HASHDOS_THRESHOLD);
+    assertThat(localCache.admissionPriority(cold, localCache.frequencySketch().frequency(cold)))
+        .isAtLeast(BoundedLocalCache.ADMIT_HASHDOS_THRESHOLD);
+    for (int i = 0; i < 1_000; i++) {
+      assertThat(localCache.admit(cold, hot)).isFalse();
+    }
+  }
+
+  @Test
+  public void getNode_weakKeys() {
+    Cache<Int, Int> cache = Caffeine.newBuilder().weakKeys().build();
+    var localCache = asBoundedLocalCache(cache);
+    var key = new Int(1);
+    cache.put(key, key);
+
+    assertThat(localCache.reusesLookupKey).isTrue();
+    assertThat(localCache.getNode(key)).isNotNull();
+    assertThat(localCache.getNode(new Int(1))).isNull();
+    assertThat(cache.getIfPresent(key)).isSameInstanceAs(key);
+    assertThat(ReusableLookupKeyReference.INSTANCE.get().get()).isNull();
+  }
+
+  @Test
+  public void shouldRefreshEarly_disabled() {
+    var cache = asBoundedLocalCache(Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .build(Int::negate));
+    cache.recordRefreshTime(Duration.ofSeconds(10).toNanos());
+    assertThat(cache.shouldRefreshEarly(Duration.ofMinutes(1).toNanos())).isFalse();
+  }
+
+  @Test
+  public void shouldRefreshEarly_noEstimate() {
+    var cache = asBoundedLocalCache(Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .probabilisticRefresh(1.0)
+        .build(Int::negate));
+    assertThat(cache.refreshTimeEstimate).isEqualTo(0);
+    assertThat(cache.shouldRefreshEarly(Duration.ofMinutes(1).toNanos())).isFalse();
+  }
+
+  @Test
+  public void shouldRefreshEarly() {
+    var cache = asBoundedLocalCache(Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .probabilisticRefresh(1.0)
+        .build(Int::negate));
+    cache.recordRefreshTime(Duration.ofSeconds(1).toNanos());
+
+    assertThat(cache.shouldRefreshEarly(0)).isFalse();
+    assertThat(cache.shouldRefreshEarly(Duration.ofMinutes(1).toNanos())).isTrue();
+
+    long early = 0;
+    long nearlyStale = Duration.ofSeconds(59).toNanos();
+    for (int i = 0; i < 1_000; i++) {
+      if (cache.shouldRefreshEarly(nearlyStale)) {
+        early++;
+      }
+    }
+    assertThat(early).isIn(Range.open(200L, 600L));
+  }
+
+  @Test
+  public void shouldRefreshEarly_firstCycle() {
+    var ticker = new FakeTicker();
+    var reloads = new MutableInt();
+    var slow = new AtomicBoolean(true);
+    LoadingCache<Int, Int> cache = Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .probabilisticRefresh(1.0)
+        .executor(Runnable::run)
+        .ticker(ticker::read)
+        .build(new CacheLoader<Int, Int>() {
+          @Override public Int load(Int key) {
+            if (slow.getAndSet(false)) {
+              ticker.advance(Duration.ofSeconds(10));
+            }
+            return key;
+          }
+          @Override public Int reload(Int key, Int oldValue) {
+            reloads.increment();
+            return key;
+          }
+        });
+    var localCache = asBoundedLocalCache(cache);
+
+    // The estimate is seeded by a load before any refresh has completed
+    cache.get(Int.valueOf(0));
+    assertThat(localCache.refreshTimeEstimate).isEqualTo(Duration.ofSeconds(10).toNanos());
+
+    // The entries that were written together are not all refreshed on the same cycle
+    for (int i = 1; i <= 1_000; i++) {
+      cache.put(Int.valueOf(i), Int.valueOf(i));
+    }
+    ticker.advance(Duration.ofSeconds(50));
+    for (int i = 1; i <= 1_000; i++) {
+      cache.getIfPresent(Int.valueOf(i));
+    }
+    assertThat(reloads.intValue()).isIn(Range.open(0, 1_000));
+  }
+
+  @Test
+  public void recordRefreshTime() {
+    var cache = asBoundedLocalCache(Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .probabilisticRefresh(1.0)
+        .build(Int::negate));
+    cache.recordRefreshTime(800);
+    assertThat(cache.refreshTimeEstimate).isEqualTo(800);
+
+    cache.recordRefreshTime(1_600);
+    assertThat(cache.refreshTimeEstimate).isEqualTo(900);
+
+    cache.recordRefreshTime(-1);
+    assertThat(cache.refreshTimeEstimate).isLessThan(900);
+  }
+
+  @Test
+  public void recordRefreshTime_unsuccessful() {
+    var ticker = new FakeTicker();
+    LoadingCache<Int, Int> cache = Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .probabilisticRefresh(1.0)
+        .executor(Runnable::run)
+        .ticker(ticker::read)
+        .build(new CacheLoader<Int, Int>() {
+          @Override public @Nullable Int load(Int key) {
+            ticker.advance(Duration.ofSeconds(1));
+            return null;
+          }
+          @Override public CompletableFuture<Int> asyncReload(
+              Int key, Int oldValue, Executor executor) {
+            ticker.advance(Duration.ofSeconds(1));
+            return CompletableFuture.failedFuture(new TimeoutException());
+          }
+        });
+    var localCache = asBoundedLocalCache(cache);
+
+    // A load that produces no value is not sampled
+    assertThat(cache.get(Int.valueOf(1))).isNull();
+    assertThat(localCache.refreshTimeEstimate).isEqualTo(0);
+
+    // A failed refresh is not sampled
+    cache.put(Int.valueOf(1), Int.valueOf(1));
+    ticker.advance(Duration.ofMinutes(2));
+    assertThat(cache.get(Int.valueOf(1))).isEqualTo(Int.valueOf(1));
+    assertThat(localCache.refreshes()).isEmpty();
+    assertThat(localCache.refreshTimeEstimate).isEqualTo(0);
+  }
+
+  @Test
+  public void serialize_policyOptions() {
+    LoadingCache<Int, Int> cache = Caffeine.newBuilder()
+        .weigher(Weigher.<Int, Int>singletonWeigher())
+        .maintenanceThread(MaintenanceThread.shared())
+        .expireAfterWrite(Duration.ofMinutes(10))
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .windowOptimizer(WindowOptimizer.ADAM)
+        .frequencySketchDoorkeeper()
+        .compactFrequencySketch()
+        .probabilisticRefresh(1.5)
+        .weightAwareAdmission()
+        .costAwareEviction()
+        .refreshAhead(2, 10)
+        .maximumWeight(100)
+        .build(Loader.NEGATIVE);
+    assertThat(cache).isReserialize();
+
+    var copy = asBoundedLocalCache(SerializableTester.reserialize(cache));
+    assertThat(copy.maintenanceExecutor).isSameInstanceAs(MaintenanceThread.shared());
+    assertThat(copy.frequencySketch().lengthShift).isNotEqualTo(0);
+    assertThat(copy.frequencySketch().hasDoorkeeper).isTrue();
+    assertThat(copy.probabilisticRefresh).isEqualTo(1.5);
+    assertThat(copy.refreshAheadConcurrency).isEqualTo(10);
+    assertThat(copy.refreshAheadFrequency).isEqualTo(2);
+    assertThat(copy.weightAwareAdmission).isTrue();
+    assertThat(copy.windowOptimizer).isNotNull();
+    assertThat(copy.costAware).isTrue();
+  }
+
+  @Test
+  public void refreshAheadEntries() {
+    var ticker = new FakeTicker();
+    var loads = new ConcurrentLinkedDeque<Int>();
+    var cache = asBoundedLocalCache(Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .expireAfterWrite(Duration.ofMinutes(10))
+        .executor(Runnable::run)
+        .ticker(ticker::read)
+        .refreshAhead(2, 10)
+        .maximumSize(100)
+        .build(key -> {
+          loads.add(key);
+          return key.negate();
+        }));
+    assertThat(cache.frequencySketch().isNotInitialized()).isFalse();
+
+    Int hot = Int.valueOf(1);
+    Int cold = Int.valueOf(2);
+    cache.put(hot, hot);
+    cache.put(cold, cold);
+    cache.frequencySketch().increment(hot);
+    cache.frequencySketch().increment(hot);
+
+    cache.cleanUp();
+    assertThat(loads).isEmpty();
+
+    ticker.advance(Duration.ofMinutes(2));
+    cache.cleanUp();
+    assertThat(loads).containsExactly(hot);
+    assertThat(cache.refreshAheadCount.get()).isEqualTo(0);
+    assertThat(cache.getIfPresentQuietly(hot)).isEqualTo(hot.negate());
+    assertThat(cache.getIfPresentQuietly(cold)).isEqualTo(cold);
+  }
+
+  @Test
+  public void refreshAheadEntries_maximumConcurrency() {
+    var ticker = new FakeTicker();
+    var reloads = new ConcurrentLinkedDeque<CompletableFuture<Int>>();
+    var cache = asBoundedLocalCache(Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .expireAfterWrite(Duration.ofMinutes(10))
+        .executor(Runnable::run)
+        .ticker(ticker::read)
+        .refreshAhead(1, 1)
+        .maximumSize(100)
+        .build(new CacheLoader<Int, Int>() {
+          @Override public Int load(Int key) {
+            throw new UnsupportedOperationException();
+          }
+          @Override public CompletableFuture<Int> asyncReload(
+              Int key, Int oldValue, Executor executor) {
+            var future = new CompletableFuture<Int>();
+            reloads.add(future);
+            return future;
+          }
+        }));
+    cache.put(Int.valueOf(1), Int.valueOf(1));
+    cache.put(Int.valueOf(2), Int.valueOf(2));
+
+    ticker.advance(Duration.ofMinutes(2));
+    cache.cleanUp();
+    assertThat(reloads).hasSize(1);
+    assertThat(cache.refreshes().size()).isEqualTo(1);
+    assertThat(cache.refreshAheadCount.get()).isEqualTo(1);
+
+    cache.cleanUp();
+    assertThat(reloads).hasSize(1);
+
+    reloads.getFirst().complete(Int.valueOf(-1));
+    assertThat(cache.refreshAheadCount.get()).isEqualTo(0);
+
+    cache.cleanUp();
+    assertThat(reloads).hasSize(2);
+  }
+
+  @Test
+  public void refreshAheadEntries_delay() {
+    var ticker = new FakeTicker();
+    var cache = asBoundedLocalCache(Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .expireAfterWrite(Duration.ofMinutes(10))
+        .executor(Runnable::run)
+        .ticker(ticker::read)
+        .refreshAhead(15, 1)
+        .maximumSize(100)
+        .build(Int::negate));
+    cache.put(Int.valueOf(1), Int.valueOf(1));
+
+    cache.evictionLock.lock();
+    try {
+      assertThat(cache.refreshAheadEntries(ticker.read()))
+          .isEqualTo(Duration.ofMinutes(1).toNanos());
+
+      // An unpopular stale entry does not cause the maintenance to be revisited
+      ticker.advance(Duration.ofMinutes(2));
+      assertThat(cache.refreshAheadEntries(ticker.read())).isEqualTo(Long.MAX_VALUE);
+      assertThat(cache.refreshAheadCursor).isNull();
+    } finally {
+      cache.evictionLock.unlock();
+    }
+  }
+
+  @Test
+  public void refreshAheadEntries_coldHead() {
+    var ticker = new FakeTicker();
+    var loads = new ConcurrentLinkedDeque<Int>();
+    var cache = asBoundedLocalCache(Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .expireAfterWrite(Duration.ofMinutes(10))
+        .executor(Runnable::run)
+        .ticker(ticker::read)
+        .refreshAhead(3, 10)
+        .maximumSize(1_000)
+        .build(key -> {
+          loads.add(key);
+          return key.negate();
+        }));
+
+    // The unpopular stale entries at the head exceed the number scanned per cycle
+    int cold = 4 * BoundedLocalCache.REFRESH_AHEAD_SCAN_LIMIT;
+    for (int i = 0; i < cold; i++) {
+      cache.put(Int.valueOf(i), Int.valueOf(i));
+    }
+    Int hot = Int.valueOf(cold);
+    cache.put(hot, hot);
+    cache.frequencySketch().increment(hot);
+    cache.frequencySketch().increment(hot);
+    ticker.advance(Duration.ofMinutes(2));
+
+    for (int i = 0; (i < 10) && loads.isEmpty(); i++) {
+      cache.cleanUp();
+    }
+    assertThat(loads).containsExactly(hot);
+    assertThat(cache.getIfPresentQuietly(hot)).isEqualTo(hot.negate());
+  }
+
+  @Test
+  public void putAll_batched() {
+    Cache<Int, Int> cache = Caffeine.newBuilder()
+        .executor(task -> {})
+        .maximumSize(10)
+        .build();
+    var localCache = asBoundedLocalCache(cache);
+    cache.putAll(Maps.toMap(Int.listOf(IntStream.range(0, 100).toArray()), Int::negate));
+
+    assertThat(localCache.writeBuffer.isEmpty()).isTrue();
+    assertThat(localCache.data).hasSize(10);
+    assertThat(localCache.weightedSize()).isEqualTo(10);
+  }
+
+  @Test
+  public void invalidateAll_batched() {
+    Cache<Int, Int> cache = Caffeine.newBuilder()
+        .executor(task -> {})
+        .maximumSize(100)
+        .build();
+    var localCache = asBoundedLocalCache(cache);
+    var keys = Int.listOf(IntStream.range(0, 50).toArray());
+    cache.putAll(Maps.toMap(keys, Int::negate));
+    assertThat(localCache.weightedSize()).isEqualTo(50);
+
+    cache.invalidateAll(keys);
+    assertThat(localCache.writeBuffer.isEmpty()).isTrue();
+    assertThat(localCache.weightedSize()).isEqualTo(0);
+    assertThat(localCache.data).isEmpty();
+  }
+
   @Test(groups = "isolated")
   public void evict_update() {
     Int key = Int.valueOf(0);
@@ -2909,6 +3359,176 @@ public final class BoundedLocalCacheTest {
     assertThat(SnapshotEntry.forEntry(1, 2, 0, 2, 3, 4)).isInstanceOf(CompleteEntry.class);
   }
 
+  @Test
+  public void writeSnapshot_restore() throws IOException {
+    var path = Files.createTempFile("caffeine", ".snapshot");
+    try {
+      Cache<Int, Int> cache = Caffeine.newBuilder()
+          .executor(Runnable::run)
+          .maximumSize(100)
+          .build();
+      for (int i = 0; i < 100; i++) {
+        cache.put(Int.valueOf(i), Int.valueOf(-i));
+      }
+      for (int i = 0; i < 10; i++) {
+        cache.getIfPresent(Int.valueOf(1));
+      }
+      cache.cleanUp();
+      cache.policy().writeSnapshot(path);
+
+      Cache<Int, Int> restored = Caffeine.newBuilder()
+          .executor(Runnable::run)
+          .restoreSnapshot(path)
+          .maximumSize(100)
+          .build();
+      assertThat(restored.asMap()).containsExactlyEntriesIn(cache.asMap());
+
+      var expected = asBoundedLocalCache(cache);
+      var actual = asBoundedLocalCache(restored);
+      assertThat(actual.weightedSize()).isEqualTo(expected.weightedSize());
+      assertThat(actual.windowWeightedSize()).isEqualTo(expected.windowWeightedSize());
+      assertThat(actual.mainProtectedWeightedSize())
+          .isEqualTo(expected.mainProtectedWeightedSize());
+      for (var key : cache.asMap().keySet()) {
+        var node = actual.data.get(key);
+        assertThat(node.getQueueType()).isEqualTo(expected.data.get(key).getQueueType());
+        assertThat(actual.frequencySketch().frequency(key))
+            .isAtLeast(expected.frequencySketch().frequency(key));
+      }
+      assertThat(actual.writeBuffer.isEmpty()).isTrue();
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void writeSnapshot_restore_exceedsMaximum() throws IOException {
+    var path = Files.createTempFile("caffeine", ".snapshot");
+    try {
+      Cache<Int, Int> cache = Caffeine.newBuilder()
+          .executor(Runnable::run)
+          .maximumSize(100)
+          .build();
+      for (int i = 0; i < 100; i++) {
+        cache.put(Int.valueOf(i), Int.valueOf(-i));
+      }
+      for (int i = 0; i < 10; i++) {
+        cache.getIfPresent(Int.valueOf(1));
+      }
+      cache.cleanUp();
+      cache.policy().writeSnapshot(path);
+
+      var evicted = new ConcurrentLinkedDeque<Int>();
+      Cache<Int, Int> restored = Caffeine.newBuilder()
+          .evictionListener((Int key, Int value, RemovalCause cause) -> evicted.add(key))
+          .executor(Runnable::run)
+          .restoreSnapshot(path)
+          .maximumSize(10)
+          .build();
+      restored.cleanUp();
+
+      // The excess is discarded from the probation queue rather than evicted after being added
+      assertThat(evicted).isEmpty();
+      assertThat(restored.estimatedSize()).isEqualTo(10);
+      assertThat(asBoundedLocalCache(restored).weightedSize()).isEqualTo(10);
+      assertThat(restored.asMap()).containsKey(Int.valueOf(1));
+      assertThat(restored.asMap()).containsKey(Int.valueOf(99));
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void writeSnapshot_restore_doorkeeper() throws IOException {
+    var path = Files.createTempFile("caffeine", ".snapshot");
+    try {
+      Cache<Int, Int> cache = Caffeine.newBuilder()
+          .frequencySketchDoorkeeper()
+          .executor(Runnable::run)
+          .maximumSize(100)
+          .build();
+      asBoundedLocalCache(cache).frequencySketch().ensureCapacity(100);
+      for (int i = 0; i < 10; i++) {
+        cache.put(Int.valueOf(i), Int.valueOf(-i));
+      }
+      for (int i = 0; i < 5; i++) {
+        cache.getIfPresent(Int.valueOf(1));
+      }
+      cache.cleanUp();
+      cache.policy().writeSnapshot(path);
+
+      Cache<Int, Int> restored = Caffeine.newBuilder()
+          .frequencySketchDoorkeeper()
+          .executor(Runnable::run)
+          .restoreSnapshot(path)
+          .maximumSize(100)
+          .build();
+
+      // The frequencies are restored directly rather than replayed as samples
+      var expected = asBoundedLocalCache(cache).frequencySketch();
+      var actual = asBoundedLocalCache(restored).frequencySketch();
+      assertThat(actual.frequency(Int.valueOf(1))).isEqualTo(expected.frequency(Int.valueOf(1)));
+      assertThat(actual.size).isEqualTo(0);
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void writeSnapshot_restore_expiration() throws IOException {
+    var path = Files.createTempFile("caffeine", ".snapshot");
+    try {
+      var ticker = new FakeTicker();
+      Cache<Int, Int> cache = Caffeine.newBuilder()
+          .expireAfterWrite(Duration.ofMinutes(2))
+          .executor(Runnable::run)
+          .ticker(ticker::read)
+          .build();
+      cache.put(Int.valueOf(1), Int.valueOf(1));
+      ticker.advance(Duration.ofMinutes(1));
+      cache.put(Int.valueOf(2), Int.valueOf(2));
+      ticker.advance(Duration.ofSeconds(30));
+      cache.policy().writeSnapshot(path);
+
+      var restoredTicker = new FakeTicker().advance(Duration.ofDays(1));
+      Cache<Int, Int> restored = Caffeine.newBuilder()
+          .expireAfterWrite(Duration.ofMinutes(2))
+          .ticker(restoredTicker::read)
+          .executor(Runnable::run)
+          .restoreSnapshot(path)
+          .build();
+      var expireAfterWrite = restored.policy().expireAfterWrite().orElseThrow();
+      assertThat(expireAfterWrite.ageOf(Int.valueOf(1))).hasValue(Duration.ofSeconds(90));
+      assertThat(expireAfterWrite.ageOf(Int.valueOf(2))).hasValue(Duration.ofSeconds(30));
+      assertThat(expireAfterWrite.oldest(1)).containsKey(Int.valueOf(1));
+
+      restoredTicker.advance(Duration.ofSeconds(45));
+      assertThat(restored.getIfPresent(Int.valueOf(1))).isNull();
+      assertThat(restored.getIfPresent(Int.valueOf(2))).isEqualTo(Int.valueOf(2));
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void writeSnapshot_async() throws IOException {
+    var path = Files.createTempFile("caffeine", ".snapshot");
+    try {
+      AsyncCache<Int, Int> cache = Caffeine.newBuilder().maximumSize(10).buildAsync();
+      cache.put(Int.valueOf(1), CompletableFuture.completedFuture(Int.valueOf(1)));
+      cache.put(Int.valueOf(2), new CompletableFuture<>());
+      cache.synchronous().policy().writeSnapshot(path);
+
+      AsyncCache<Int, Int> restored = Caffeine.newBuilder()
+          .restoreSnapshot(path)
+          .maximumSize(10)
+          .buildAsync();
+      assertThat(restored.synchronous().asMap()).containsExactly(Int.valueOf(1), Int.valueOf(1));
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
   static <K, V> BoundedLocalCache<K, V> asBoundedLocalCache(Cache<K, V> cache) {
     return (BoundedLocalCache<K, V>) cache.asMap();
   }
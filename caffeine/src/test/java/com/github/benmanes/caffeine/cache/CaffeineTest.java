@@ -22,9 +22,15 @@ import static org.junit.Assert.assertThrows;
 import static org.mockito.Mockito.verify;
 import static org.slf4j.event.Level.WARN;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -57,6 +63,14 @@ public final class CaffeineTest {
       (key, value) -> { throw new AssertionError(); });
   private static final CacheLoader<Object, Object> loader =
       key -> { throw new AssertionError(); };
+  private static final CacheLoader<Object, Object> bulkLoader = new CacheLoader<>() {
+    @Override public Object load(Object key) {
+      throw new AssertionError();
+    }
+    @Override public Map<Object, Object> loadAll(Set<?> keys) {
+      throw new AssertionError();
+    }
+  };
 
   @AfterMethod
   public void reset() {
@@ -405,6 +419,153 @@ public final class CaffeineTest {
     assertThat(builder.build()).isNotNull();
   }
 
+  /* --------------- weightAwareAdmission --------------- */
+
+  @Test
+  public void weightAwareAdmission_twice() {
+    var builder = Caffeine.newBuilder().weightAwareAdmission();
+    assertThrows(IllegalStateException.class, builder::weightAwareAdmission);
+  }
+
+  @Test
+  public void weightAwareAdmission_maximumSize() {
+    var builder = Caffeine.newBuilder().maximumSize(1).weightAwareAdmission();
+    assertThrows(IllegalStateException.class, builder::build);
+  }
+
+  @Test
+  public void weightAwareAdmission() {
+    var builder = Caffeine.newBuilder()
+        .maximumWeight(1).weigher(Weigher.singletonWeigher()).weightAwareAdmission();
+    assertThat(builder.weightAwareAdmission).isTrue();
+    assertThat(builder.toString()).contains("weightAwareAdmission");
+
+    var cache = (BoundedLocalCache<?, ?>) builder.build().asMap();
+    assertThat(cache.weightAwareAdmission).isTrue();
+  }
+
+  /* --------------- compactFrequencySketch --------------- */
+
+  @Test
+  public void compactFrequencySketch_twice() {
+    var builder = Caffeine.newBuilder().compactFrequencySketch();
+    assertThrows(IllegalStateException.class, builder::compactFrequencySketch);
+  }
+
+  @Test
+  public void compactFrequencySketch_noMaximum() {
+    var builder = Caffeine.newBuilder().compactFrequencySketch();
+    assertThrows(IllegalStateException.class, builder::build);
+  }
+
+  @Test
+  public void compactFrequencySketch() {
+    var builder = Caffeine.newBuilder()
+        .maximumSize(1_024).initialCapacity(1_024).compactFrequencySketch();
+    assertThat(builder.compactSketch).isTrue();
+    assertThat(builder.toString()).contains("compactFrequencySketch");
+
+    var cache = (BoundedLocalCache<?, ?>) builder.build().asMap();
+    assertThat(cache.frequencySketch().table).hasLength(1_024 >> FrequencySketch.COMPACT_SHIFT);
+  }
+
+  /* --------------- frequencySketchDoorkeeper --------------- */
+
+  @Test
+  public void frequencySketchDoorkeeper_twice() {
+    var builder = Caffeine.newBuilder().frequencySketchDoorkeeper();
+    assertThrows(IllegalStateException.class, builder::frequencySketchDoorkeeper);
+  }
+
+  @Test
+  public void frequencySketchDoorkeeper_noMaximum() {
+    var builder = Caffeine.newBuilder().frequencySketchDoorkeeper();
+    assertThrows(IllegalStateException.class, builder::build);
+  }
+
+  @Test
+  public void frequencySketchDoorkeeper() {
+    var builder = Caffeine.newBuilder()
+        .maximumSize(1_024).initialCapacity(1_024).frequencySketchDoorkeeper();
+    assertThat(builder.doorkeeper).isTrue();
+    assertThat(builder.toString()).contains("frequencySketchDoorkeeper");
+
+    var cache = (BoundedLocalCache<?, ?>) builder.build().asMap();
+    assertThat(cache.frequencySketch().doorkeeper).hasLength(1_024 >> 3);
+  }
+
+  /* --------------- costAwareEviction --------------- */
+
+  @Test
+  public void costAwareEviction_twice() {
+    var builder = Caffeine.newBuilder().costAwareEviction();
+    assertThrows(IllegalStateException.class, builder::costAwareEviction);
+  }
+
+  @Test
+  public void costAwareEviction_noMaximum() {
+    var builder = Caffeine.newBuilder().costAwareEviction();
+    assertThrows(IllegalStateException.class, builder::build);
+  }
+
+  @Test
+  public void costAwareEviction_async() {
+    var builder = Caffeine.newBuilder().maximumSize(1).costAwareEviction();
+    assertThrows(IllegalStateException.class, builder::buildAsync);
+    assertThrows(IllegalStateException.class, () -> builder.buildAsync(loader));
+  }
+
+  @Test
+  public void costAwareEviction() {
+    var builder = Caffeine.newBuilder().maximumSize(1_024).costAwareEviction();
+    assertThat(builder.costAware).isTrue();
+    assertThat(builder.getLoadPenaltyTicker()).isSameInstanceAs(Ticker.systemTicker());
+    assertThat(builder.toString()).contains("costAwareEviction");
+
+    var cache = (BoundedLocalCache<?, ?>) builder.build().asMap();
+    assertThat(cache.costAware).isTrue();
+  }
+
+  /* --------------- windowOptimizer --------------- */
+
+  @Test
+  @SuppressWarnings("NullAway")
+  public void windowOptimizer_null() {
+    assertThrows(NullPointerException.class, () -> Caffeine.newBuilder().windowOptimizer(null));
+  }
+
+  @Test
+  public void windowOptimizer_twice() {
+    var builder = Caffeine.newBuilder().windowOptimizer(WindowOptimizer.ADAM);
+    assertThrows(IllegalStateException.class, () ->
+        builder.windowOptimizer(WindowOptimizer.HILL_CLIMBING));
+  }
+
+  @Test
+  public void windowOptimizer_noMaximum() {
+    var builder = Caffeine.newBuilder().windowOptimizer(WindowOptimizer.ADAM);
+    assertThrows(IllegalStateException.class, builder::build);
+  }
+
+  @Test
+  public void windowOptimizer_default() {
+    var builder = Caffeine.newBuilder().maximumSize(1);
+    assertThat(builder.getWindowOptimizer()).isEqualTo(WindowOptimizer.HILL_CLIMBING);
+
+    var cache = (BoundedLocalCache<?, ?>) builder.build().asMap();
+    assertThat(cache.windowOptimizer).isNull();
+  }
+
+  @Test
+  public void windowOptimizer_adam() {
+    var builder = Caffeine.newBuilder().maximumSize(1).windowOptimizer(WindowOptimizer.ADAM);
+    assertThat(builder.getWindowOptimizer()).isEqualTo(WindowOptimizer.ADAM);
+    assertThat(builder.toString()).contains("windowOptimizer=adam");
+
+    var cache = (BoundedLocalCache<?, ?>) builder.build().asMap();
+    assertThat(cache.windowOptimizer).isNotNull();
+  }
+
   /* --------------- expireAfterAccess --------------- */
 
   @Test
@@ -698,6 +859,320 @@ public final class CaffeineTest {
     assertThat(builder.build(k -> k)).isNotNull();
   }
 
+  /* --------------- staleWhileRevalidate --------------- */
+
+  @Test
+  @SuppressWarnings("NullAway")
+  public void staleWhileRevalidate_null() {
+    assertThrows(NullPointerException.class, () ->
+        Caffeine.newBuilder().staleWhileRevalidate(null, Duration.ofMinutes(1)));
+    assertThrows(NullPointerException.class, () ->
+        Caffeine.newBuilder().staleWhileRevalidate(Duration.ofMinutes(1), null));
+  }
+
+  @Test
+  public void staleWhileRevalidate_negative() {
+    var builder = Caffeine.newBuilder();
+    assertThrows(IllegalArgumentException.class, () ->
+        builder.staleWhileRevalidate(Duration.ZERO, Duration.ofMinutes(1)));
+    assertThrows(IllegalArgumentException.class, () ->
+        builder.staleWhileRevalidate(Duration.ofMinutes(1), Duration.ofMillis(-1)));
+  }
+
+  @Test
+  public void staleWhileRevalidate_twice() {
+    var builder = Caffeine.newBuilder().expireAfterWrite(Duration.ofMinutes(1));
+    assertThrows(IllegalStateException.class, () ->
+        builder.staleWhileRevalidate(Duration.ofMinutes(1), Duration.ofMinutes(1)));
+    assertThat(builder.refreshAfterWrite()).isFalse();
+  }
+
+  @Test
+  public void staleWhileRevalidate_noCacheLoader() {
+    assertThrows(IllegalStateException.class, () -> Caffeine.newBuilder()
+        .staleWhileRevalidate(Duration.ofMinutes(1), Duration.ofMinutes(1)).build());
+  }
+
+  @Test
+  public void staleWhileRevalidate() {
+    var builder = Caffeine.newBuilder()
+        .staleWhileRevalidate(Duration.ofMinutes(1), Duration.ofMinutes(5));
+    assertThat(builder.getRefreshAfterWriteNanos()).isEqualTo(Duration.ofMinutes(1).toNanos());
+    assertThat(builder.getExpiresAfterWriteNanos()).isEqualTo(Duration.ofMinutes(6).toNanos());
+    assertThat(builder.build(k -> k)).isNotNull();
+  }
+
+  @Test
+  public void staleWhileRevalidate_excessive() {
+    var builder = Caffeine.newBuilder().staleWhileRevalidate(
+        ChronoUnit.FOREVER.getDuration(), ChronoUnit.FOREVER.getDuration());
+    assertThat(builder.getRefreshAfterWriteNanos()).isEqualTo(Long.MAX_VALUE);
+    assertThat(builder.getExpiresAfterWriteNanos()).isEqualTo(Long.MAX_VALUE);
+  }
+
+  /* --------------- probabilisticRefresh --------------- */
+
+  @Test
+  public void probabilisticRefresh_invalid() {
+    var builder = Caffeine.newBuilder();
+    assertThrows(IllegalArgumentException.class, () -> builder.probabilisticRefresh(0));
+    assertThrows(IllegalArgumentException.class, () -> builder.probabilisticRefresh(-1));
+    assertThrows(IllegalArgumentException.class, () -> builder.probabilisticRefresh(Double.NaN));
+    assertThrows(IllegalArgumentException.class, () ->
+        builder.probabilisticRefresh(Double.POSITIVE_INFINITY));
+  }
+
+  @Test
+  public void probabilisticRefresh_twice() {
+    var builder = Caffeine.newBuilder().probabilisticRefresh(1.0);
+    assertThrows(IllegalStateException.class, () -> builder.probabilisticRefresh(1.0));
+  }
+
+  @Test
+  public void probabilisticRefresh_noRefresh() {
+    var builder = Caffeine.newBuilder().probabilisticRefresh(1.0);
+    assertThrows(IllegalStateException.class, () -> builder.build(loader));
+    assertThrows(IllegalStateException.class, () -> builder.buildAsync(loader));
+    assertThrows(IllegalStateException.class, builder::build);
+  }
+
+  @Test
+  public void probabilisticRefresh() {
+    var builder = Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .probabilisticRefresh(2.0);
+    assertThat(builder.getProbabilisticRefreshBeta()).isEqualTo(2.0);
+    assertThat(builder.toString()).contains("probabilisticRefresh=2.0");
+    assertThat(builder.build(loader)).isNotNull();
+  }
+
+  /* --------------- refreshAhead --------------- */
+
+  @Test
+  public void refreshAhead_invalid() {
+    var builder = Caffeine.newBuilder();
+    assertThrows(IllegalArgumentException.class, () -> builder.refreshAhead(0, 1));
+    assertThrows(IllegalArgumentException.class, () -> builder.refreshAhead(16, 1));
+    assertThrows(IllegalArgumentException.class, () -> builder.refreshAhead(1, 0));
+  }
+
+  @Test
+  public void refreshAhead_twice() {
+    var builder = Caffeine.newBuilder().refreshAhead(1, 1);
+    assertThrows(IllegalStateException.class, () -> builder.refreshAhead(1, 1));
+  }
+
+  @Test
+  public void refreshAhead_noRefresh() {
+    var builder = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofMinutes(1))
+        .refreshAhead(1, 1)
+        .maximumSize(100);
+    assertThrows(IllegalStateException.class, () -> builder.build(loader));
+    assertThrows(IllegalStateException.class, () -> builder.buildAsync(loader));
+  }
+
+  @Test
+  public void refreshAhead_noExpiration() {
+    var builder = Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .refreshAhead(1, 1)
+        .maximumSize(100);
+    assertThrows(IllegalStateException.class, () -> builder.build(loader));
+    assertThrows(IllegalStateException.class, () -> builder.buildAsync(loader));
+  }
+
+  @Test
+  public void refreshAhead_noMaximum() {
+    var builder = Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .expireAfterWrite(Duration.ofMinutes(2))
+        .refreshAhead(1, 1);
+    assertThrows(IllegalStateException.class, () -> builder.build(loader));
+    assertThrows(IllegalStateException.class, () -> builder.buildAsync(loader));
+  }
+
+  @Test
+  public void refreshAhead() {
+    var builder = Caffeine.newBuilder()
+        .refreshAfterWrite(Duration.ofMinutes(1))
+        .expireAfterWrite(Duration.ofMinutes(2))
+        .refreshAhead(3, 10)
+        .maximumSize(100);
+    assertThat(builder.getRefreshAheadFrequency()).isEqualTo(3);
+    assertThat(builder.getRefreshAheadConcurrency()).isEqualTo(10);
+    assertThat(builder.toString()).contains("refreshAhead=3/10");
+    assertThat(builder.build(loader)).isNotNull();
+  }
+
+  /* --------------- coalesceLoads --------------- */
+
+  @Test
+  @SuppressWarnings("NullAway")
+  public void coalesceLoads_null() {
+    assertThrows(NullPointerException.class, () ->
+        Caffeine.newBuilder().coalesceLoads(10, null));
+  }
+
+  @Test
+  public void coalesceLoads_negative() {
+    var builder = Caffeine.newBuilder();
+    assertThrows(IllegalArgumentException.class, () ->
+        builder.coalesceLoads(0, Duration.ofMillis(1)));
+    assertThrows(IllegalArgumentException.class, () ->
+        builder.coalesceLoads(10, Duration.ZERO));
+  }
+
+  @Test
+  public void coalesceLoads_twice() {
+    var builder = Caffeine.newBuilder().coalesceLoads(10, Duration.ofMillis(1));
+    assertThrows(IllegalStateException.class, () ->
+        builder.coalesceLoads(10, Duration.ofMillis(1)));
+  }
+
+  @Test
+  public void coalesceLoads_noLoader() {
+    var builder = Caffeine.newBuilder().coalesceLoads(10, Duration.ofMillis(1));
+    assertThrows(IllegalStateException.class, builder::build);
+    assertThrows(IllegalStateException.class, builder::buildAsync);
+  }
+
+  @Test
+  public void coalesceLoads_noBulkLoader() {
+    var builder = Caffeine.newBuilder().coalesceLoads(10, Duration.ofMillis(1));
+    assertThrows(IllegalStateException.class, () -> builder.build(loader));
+    assertThrows(IllegalStateException.class, () -> builder.buildAsync(loader));
+    assertThrows(IllegalStateException.class, () -> builder.buildAsync(
+        (AsyncCacheLoader<Object, Object>) (key, executor) -> { throw new AssertionError(); }));
+  }
+
+  @Test
+  public void coalesceLoads() {
+    var builder = Caffeine.newBuilder().coalesceLoads(10, Duration.ofMillis(1));
+    assertThat(builder.coalesceBatchSize).isEqualTo(10);
+    assertThat(builder.coalesceDelayNanos).isEqualTo(Duration.ofMillis(1).toNanos());
+    assertThat(builder.toString()).contains("coalesceLoads=10/1000000ns");
+
+    var cache = (LocalLoadingCache<?, ?>) builder.build(bulkLoader);
+    assertThat(cache.cacheLoader()).isInstanceOf(CoalescingLoader.class);
+    var asyncCache = (LocalAsyncLoadingCache<?, ?>) builder.buildAsync(bulkLoader);
+    assertThat(asyncCache.cacheLoader).isInstanceOf(CoalescingLoader.class);
+  }
+
+  /* --------------- loadLimiter --------------- */
+
+  @Test
+  @SuppressWarnings("NullAway")
+  public void loadLimiter_null() {
+    assertThrows(NullPointerException.class, () -> Caffeine.newBuilder().loadLimiter(null));
+  }
+
+  @Test
+  public void loadLimiter_twice() {
+    var builder = Caffeine.newBuilder().loadLimiter(LoadLimiter.of(1));
+    assertThrows(IllegalStateException.class, () -> builder.loadLimiter(LoadLimiter.of(1)));
+  }
+
+  @Test
+  public void loadLimiter_noLoader() {
+    var builder = Caffeine.newBuilder().loadLimiter(LoadLimiter.of(1));
+    assertThrows(IllegalStateException.class, builder::build);
+    assertThrows(IllegalStateException.class, builder::buildAsync);
+  }
+
+  @Test
+  public void loadLimiter() {
+    var limiter = LoadLimiter.of(1);
+    var builder = Caffeine.newBuilder().loadLimiter(limiter);
+    assertThat(builder.loadLimiter).isSameInstanceAs(limiter);
+    assertThat(builder.toString()).contains("loadLimiter");
+
+    var cache = (LocalLoadingCache<?, ?>) builder.build(loader);
+    assertThat(cache.cacheLoader()).isInstanceOf(LimitingLoader.class);
+    var asyncCache = (LocalAsyncLoadingCache<?, ?>) builder.buildAsync(loader);
+    assertThat(asyncCache.cacheLoader).isInstanceOf(LimitingLoader.class);
+  }
+
+  @Test
+  public void loadLimiter_coalesceLoads() {
+    var builder = Caffeine.newBuilder()
+        .coalesceLoads(10, Duration.ofMillis(1))
+        .loadLimiter(LoadLimiter.of(1));
+    var cache = (LocalLoadingCache<?, ?>) builder.build(bulkLoader);
+    var coalescing = (CoalescingLoader<?, ?>) cache.cacheLoader();
+    assertThat(coalescing.delegate).isInstanceOf(LimitingLoader.class);
+  }
+
+  /* --------------- loadTimeout --------------- */
+
+  @Test
+  @SuppressWarnings("NullAway")
+  public void loadTimeout_null() {
+    assertThrows(NullPointerException.class, () -> Caffeine.newBuilder().loadTimeout(null));
+    assertThrows(NullPointerException.class, () -> Caffeine.newBuilder().refreshTimeout(null));
+  }
+
+  @Test
+  public void loadTimeout_invalid() {
+    var builder = Caffeine.newBuilder();
+    assertThrows(IllegalArgumentException.class, () -> builder.loadTimeout(Duration.ZERO));
+    assertThrows(IllegalArgumentException.class, () -> builder.refreshTimeout(Duration.ZERO));
+    assertThrows(IllegalArgumentException.class, () -> builder.hedgeLoads(0));
+    assertThrows(IllegalArgumentException.class, () -> builder.hedgeLoads(100));
+    assertThrows(IllegalArgumentException.class, () -> builder.hedgeLoads(Double.NaN));
+  }
+
+  @Test
+  public void loadTimeout_twice() {
+    var builder = Caffeine.newBuilder()
+        .refreshTimeout(Duration.ofSeconds(1))
+        .loadTimeout(Duration.ofSeconds(1))
+        .hedgeLoads(95);
+    assertThrows(IllegalStateException.class, () -> builder.loadTimeout(Duration.ofSeconds(1)));
+    assertThrows(IllegalStateException.class, () ->
+        builder.refreshTimeout(Duration.ofSeconds(1)));
+    assertThrows(IllegalStateException.class, () -> builder.hedgeLoads(95));
+  }
+
+  @Test
+  public void loadTimeout_noLoader() {
+    var builder = Caffeine.newBuilder().loadTimeout(Duration.ofSeconds(1));
+    assertThrows(IllegalStateException.class, builder::build);
+    assertThrows(IllegalStateException.class, builder::buildAsync);
+    assertThrows(IllegalStateException.class,
+        Caffeine.newBuilder().refreshTimeout(Duration.ofSeconds(1))::build);
+    assertThrows(IllegalStateException.class, Caffeine.newBuilder().hedgeLoads(95)::build);
+  }
+
+  @Test
+  public void loadTimeout() {
+    var builder = Caffeine.newBuilder()
+        .refreshTimeout(Duration.ofSeconds(2))
+        .loadTimeout(Duration.ofSeconds(1))
+        .hedgeLoads(95);
+    assertThat(builder.toString()).contains("loadTimeout=1000000000ns");
+    assertThat(builder.toString()).contains("refreshTimeout=2000000000ns");
+    assertThat(builder.toString()).contains("hedgeLoads=95.0");
+
+    var cache = (LocalLoadingCache<?, ?>) builder.build(loader);
+    var deadline = (DeadlineLoader<?, ?>) cache.cacheLoader();
+    assertThat(deadline.loadTimeoutNanos).isEqualTo(Duration.ofSeconds(1).toNanos());
+    assertThat(deadline.refreshTimeoutNanos).isEqualTo(Duration.ofSeconds(2).toNanos());
+    assertThat(deadline.hedgePercentile).isEqualTo(95.0);
+
+    var asyncCache = (LocalAsyncLoadingCache<?, ?>) builder.buildAsync(loader);
+    assertThat(asyncCache.cacheLoader).isInstanceOf(DeadlineLoader.class);
+  }
+
+  @Test
+  public void loadTimeout_refreshOnly() {
+    var builder = Caffeine.newBuilder().refreshTimeout(Duration.ofSeconds(1));
+    var cache = (LocalLoadingCache<?, ?>) builder.build(loader);
+    var deadline = (DeadlineLoader<?, ?>) cache.cacheLoader();
+    assertThat(deadline.loadTimeoutNanos).isEqualTo(0);
+    assertThat(deadline.hedgePercentile).isEqualTo(0.0);
+  }
+
   /* --------------- weakKeys --------------- */
 
   @Test
@@ -791,6 +1266,38 @@ public final class CaffeineTest {
     assertThat(builder.build()).isNotNull();
   }
 
+  /* --------------- maintenanceThread --------------- */
+
+  @Test
+  @SuppressWarnings("NullAway")
+  public void maintenanceThread_null() {
+    assertThrows(NullPointerException.class, () -> Caffeine.newBuilder().maintenanceThread(null));
+  }
+
+  @Test
+  public void maintenanceThread_twice() {
+    var builder = Caffeine.newBuilder().maintenanceThread(MaintenanceThread.shared());
+    assertThrows(IllegalStateException.class, () ->
+        builder.maintenanceThread(MaintenanceThread.shared()));
+  }
+
+  @Test
+  public void maintenanceThread_default() {
+    var builder = Caffeine.newBuilder().executor(directExecutor());
+    assertThat(builder.getMaintenanceExecutor()).isSameInstanceAs(directExecutor());
+  }
+
+  @Test
+  public void maintenanceThread() {
+    var builder = Caffeine.newBuilder()
+        .maintenanceThread(MaintenanceThread.shared())
+        .executor(directExecutor());
+    assertThat(builder.getMaintenanceExecutor()).isSameInstanceAs(MaintenanceThread.shared());
+    assertThat(builder.getExecutor()).isSameInstanceAs(directExecutor());
+    assertThat(builder.toString()).contains("maintenanceThread");
+    assertThat(builder.build()).isNotNull();
+  }
+
   /* --------------- ticker --------------- */
 
   @Test
@@ -901,4 +1408,26 @@ public final class CaffeineTest {
     assertThat(builder.evictionListener).isSameInstanceAs(removalListener);
     assertThat(builder.build()).isNotNull();
   }
+
+  /* --------------- restoreSnapshot --------------- */
+
+  @Test
+  @SuppressWarnings("NullAway")
+  public void restoreSnapshot_null() {
+    assertThrows(NullPointerException.class, () -> Caffeine.newBuilder().restoreSnapshot(null));
+  }
+
+  @Test
+  public void restoreSnapshot_twice() {
+    var builder = Caffeine.newBuilder().restoreSnapshot(Path.of("snapshot"));
+    assertThrows(IllegalStateException.class, () -> builder.restoreSnapshot(Path.of("snapshot")));
+  }
+
+  @Test
+  public void restoreSnapshot_missing() throws IOException {
+    var path = Files.createTempDirectory("caffeine").resolve("missing");
+    var builder = Caffeine.newBuilder().restoreSnapshot(path);
+    assertThat(builder.getSnapshotPath()).isSameInstanceAs(path);
+    assertThrows(UncheckedIOException.class, builder::build);
+  }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.testing.Awaits.await;
+import static com.github.benmanes.caffeine.testing.FutureSubject.assertThat;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static org.junit.Assert.assertThrows;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class CoalescingLoaderTest {
+  static final long ONE_MINUTE = Duration.ofMinutes(1).toNanos();
+  static final long ONE_MILLI = Duration.ofMillis(1).toNanos();
+
+  @Test
+  public void asyncLoad_maximumBatchSize() {
+    var loader = new RecordingLoader();
+    var coalescing = new CoalescingLoader<>(loader, 3, ONE_MINUTE, directExecutor());
+    var one = coalescing.asyncLoad(1, directExecutor());
+    var two = coalescing.asyncLoad(2, directExecutor());
+    assertThat(loader.batches).isEmpty();
+
+    var three = coalescing.asyncLoad(3, directExecutor());
+    assertThat(one.join()).isEqualTo(-1);
+    assertThat(two.join()).isEqualTo(-2);
+    assertThat(three.join()).isEqualTo(-3);
+    assertThat(loader.batches).containsExactly(Set.of(1, 2, 3));
+    assertThat(coalescing.batch).isNull();
+  }
+
+  @Test
+  public void asyncLoad_maximumDelay() {
+    var loader = new RecordingLoader();
+    var coalescing = new CoalescingLoader<>(loader, 100, ONE_MILLI, ForkJoinPool.commonPool());
+    var one = coalescing.asyncLoad(1, ForkJoinPool.commonPool());
+    var two = coalescing.asyncLoad(2, ForkJoinPool.commonPool());
+
+    await().until(() -> one.isDone() && two.isDone());
+    assertThat(one.join()).isEqualTo(-1);
+    assertThat(two.join()).isEqualTo(-2);
+    assertThat(loader.batches).containsExactly(Set.of(1, 2));
+  }
+
+  @Test
+  public void asyncLoad_maximumDelay_executorBusy() {
+    var loader = new RecordingLoader();
+    var tasks = new ConcurrentLinkedQueue<Runnable>();
+    var coalescing = new CoalescingLoader<>(loader, 100, ONE_MILLI, tasks::add);
+    var one = coalescing.asyncLoad(1, directExecutor());
+
+    await().until(one::isDone);
+    assertThat(one.join()).isEqualTo(-1);
+    assertThat(tasks).isEmpty();
+  }
+
+  @Test
+  public void asyncLoad_sameKey() {
+    var loader = new RecordingLoader();
+    var coalescing = new CoalescingLoader<>(loader, 2, ONE_MINUTE, directExecutor());
+    var first = coalescing.asyncLoad(1, directExecutor());
+    var second = coalescing.asyncLoad(1, directExecutor());
+    assertThat(second).isSameInstanceAs(first);
+    assertThat(first).isNotDone();
+  }
+
+  @Test
+  public void asyncLoad_absent() {
+    var loader = new RecordingLoader();
+    loader.absent = true;
+    var coalescing = new CoalescingLoader<>(loader, 1, ONE_MINUTE, directExecutor());
+    assertThat(coalescing.asyncLoad(1, directExecutor()).join()).isNull();
+  }
+
+  @Test
+  public void asyncLoad_failure() {
+    var loader = new RecordingLoader();
+    loader.failure = new IllegalStateException();
+    var coalescing = new CoalescingLoader<>(loader, 2, ONE_MINUTE, directExecutor());
+    var one = coalescing.asyncLoad(1, directExecutor());
+    var two = coalescing.asyncLoad(2, directExecutor());
+
+    var error = assertThrows(CompletionException.class, one::join);
+    assertThat(error).hasCauseThat().isSameInstanceAs(loader.failure);
+    assertThat(two.isCompletedExceptionally()).isTrue();
+  }
+
+  @Test
+  public void asyncLoad_rejected() {
+    var loader = new RecordingLoader();
+    var coalescing = new CoalescingLoader<>(loader, 1, ONE_MINUTE, directExecutor());
+    var future = coalescing.asyncLoad(1, task -> { throw new IllegalStateException(); });
+    assertThat(future.isCompletedExceptionally()).isTrue();
+    assertThat(loader.batches).isEmpty();
+  }
+
+  @Test
+  public void load() throws Exception {
+    var loader = new RecordingLoader();
+    var coalescing = new CoalescingLoader<>(loader, 100, ONE_MILLI, ForkJoinPool.commonPool());
+    assertThat(coalescing.load(1)).isEqualTo(-1);
+    assertThat(loader.batches).containsExactly(Set.of(1));
+  }
+
+  @Test
+  public void load_failure() {
+    var loader = new RecordingLoader();
+    loader.failure = new IllegalStateException();
+    var coalescing = new CoalescingLoader<>(loader, 1, ONE_MINUTE, directExecutor());
+    var error = assertThrows(IllegalStateException.class, () -> coalescing.load(1));
+    assertThat(error).isSameInstanceAs(loader.failure);
+  }
+
+  @Test
+  public void loadAll() throws Exception {
+    var loader = new RecordingLoader();
+    var coalescing = new CoalescingLoader<>(loader, 100, ONE_MINUTE, directExecutor());
+    assertThat(coalescing.loadAll(Set.of(1, 2))).containsExactly(1, -1, 2, -2);
+    assertThat(coalescing.asyncLoadAll(Set.of(3), directExecutor()).join())
+        .containsExactly(3, -3);
+    assertThat(loader.batches).containsExactly(Set.of(1, 2), Set.of(3));
+    assertThat(coalescing.batch).isNull();
+  }
+
+  @Test
+  public void cache() {
+    var loader = new RecordingLoader();
+    AsyncLoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .coalesceLoads(3, Duration.ofMinutes(1))
+        .executor(directExecutor())
+        .buildAsync(loader);
+    var futures = cache.getAll(List.of(1, 2)).join();
+    assertThat(futures).containsExactly(1, -1, 2, -2);
+
+    var three = cache.get(3);
+    var four = cache.get(4);
+    var five = cache.get(5);
+    assertThat(List.of(three.join(), four.join(), five.join())).containsExactly(-3, -4, -5);
+    assertThat(loader.batches).containsExactly(Set.of(1, 2), Set.of(3, 4, 5));
+  }
+
+  static final class RecordingLoader implements CacheLoader<Integer, Integer> {
+    final ConcurrentLinkedQueue<Set<Integer>> batches = new ConcurrentLinkedQueue<>();
+    volatile RuntimeException failure;
+    volatile boolean absent;
+
+    @Override public Integer load(Integer key) {
+      throw new UnsupportedOperationException();
+    }
+    @Override public Map<Integer, Integer> loadAll(Set<? extends Integer> keys) {
+      batches.add(Set.copyOf(keys));
+      if (failure != null) {
+        throw failure;
+      }
+      var result = new HashMap<Integer, Integer>();
+      if (!absent) {
+        for (var key : keys) {
+          result.put(key, -key);
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.testing.Awaits.await;
+import static com.github.benmanes.caffeine.testing.FutureSubject.assertThat;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static org.junit.Assert.assertThrows;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.google.common.testing.FakeTicker;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class DeadlineLoaderTest {
+  static final long ONE_MILLI = Duration.ofMillis(1).toNanos();
+
+  @Test
+  public void asyncLoad_timeout() {
+    var loader = new PendingLoader();
+    var deadline = newDeadlineLoader(loader, ONE_MILLI, 0, 0, directExecutor());
+    var future = deadline.asyncLoad(1, directExecutor());
+
+    var error = assertThrows(CompletionException.class, future::join);
+    assertThat(error).hasCauseThat().isInstanceOf(TimeoutException.class);
+    await().untilAsserted(() -> assertThat(loader.futures.peek().isCancelled()).isTrue());
+  }
+
+  @Test
+  public void asyncLoad_noTimeout() {
+    var loader = new PendingLoader();
+    var deadline = newDeadlineLoader(loader, 0, ONE_MILLI, 0, directExecutor());
+    var future = deadline.asyncLoad(1, directExecutor());
+    assertThat(future).isNotDone();
+
+    loader.futures.poll().complete(-1);
+    assertThat(future.join()).isEqualTo(-1);
+  }
+
+  @Test
+  public void asyncReload_timeout() {
+    var loader = new PendingLoader();
+    var deadline = newDeadlineLoader(loader, 0, ONE_MILLI, 0, directExecutor());
+    var future = deadline.asyncReload(1, 1, directExecutor());
+
+    var error = assertThrows(CompletionException.class, future::join);
+    assertThat(error).hasCauseThat().isInstanceOf(TimeoutException.class);
+  }
+
+  @Test
+  public void asyncLoad_cancel() {
+    var loader = new PendingLoader();
+    var deadline = newDeadlineLoader(loader, 0, 0, 0, directExecutor());
+    var future = deadline.asyncLoad(1, directExecutor());
+
+    future.cancel(false);
+    assertThat(loader.futures.poll().isCancelled()).isTrue();
+  }
+
+  @Test
+  public void asyncLoad_failure() {
+    AsyncCacheLoader<Integer, Integer> loader = (key, executor) -> {
+      throw new IllegalStateException();
+    };
+    var deadline = newDeadlineLoader(loader, 0, 0, 50, directExecutor());
+    var future = deadline.asyncLoad(1, directExecutor());
+
+    var error = assertThrows(CompletionException.class, future::join);
+    assertThat(error).hasCauseThat().isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void asyncLoad_hedged() {
+    var loader = new PendingLoader();
+    var deadline = newDeadlineLoader(loader, 0, 0, 50, ForkJoinPool.commonPool());
+    for (int i = 0; i < DeadlineLoader.MINIMUM_SAMPLES; i++) {
+      deadline.recordLatency(ONE_MILLI);
+    }
+    var future = deadline.asyncLoad(1, directExecutor());
+    await().until(() -> loader.futures.size() == 2);
+
+    var first = loader.futures.poll();
+    var second = loader.futures.poll();
+    second.complete(-1);
+    assertThat(future.join()).isEqualTo(-1);
+    assertThat(first.isCancelled()).isTrue();
+  }
+
+  @Test
+  public void asyncLoad_hedged_firstFails() {
+    var loader = new PendingLoader();
+    var deadline = newDeadlineLoader(loader, 0, 0, 50, ForkJoinPool.commonPool());
+    for (int i = 0; i < DeadlineLoader.MINIMUM_SAMPLES; i++) {
+      deadline.recordLatency(ONE_MILLI);
+    }
+    var future = deadline.asyncLoad(1, directExecutor());
+    await().until(() -> loader.futures.size() == 2);
+
+    loader.futures.poll().completeExceptionally(new IllegalStateException());
+    assertThat(future).isNotDone();
+    loader.futures.poll().complete(-1);
+    assertThat(future.join()).isEqualTo(-1);
+  }
+
+  @Test
+  public void recordLatency() {
+    var deadline = newDeadlineLoader(new PendingLoader(), 0, 0, 90, directExecutor());
+    for (int i = 1; i < DeadlineLoader.MINIMUM_SAMPLES; i++) {
+      deadline.recordLatency(i);
+    }
+    assertThat(deadline.hedgeDelayNanos).isEqualTo(0);
+
+    for (int i = DeadlineLoader.MINIMUM_SAMPLES; i <= 80; i++) {
+      deadline.recordLatency(i);
+    }
+    assertThat(deadline.hedgeDelayNanos).isEqualTo(72);
+
+    // The percentile is recomputed periodically rather than on every sample
+    deadline.recordLatency(1_000);
+    assertThat(deadline.hedgeDelayNanos).isEqualTo(72);
+
+    for (int i = 0; i < DeadlineLoader.SAMPLE_SIZE; i++) {
+      deadline.recordLatency(1_000);
+    }
+    assertThat(deadline.hedgeDelayNanos).isEqualTo(1_000);
+  }
+
+  @Test
+  public void recordLatency_ticker() {
+    var ticker = new FakeTicker();
+    var loader = new PendingLoader();
+    var deadline = DeadlineLoader.create(loader, 0, 0, 50, directExecutor(), ticker::read);
+    for (int i = 0; i < DeadlineLoader.MINIMUM_SAMPLES; i++) {
+      var future = deadline.asyncLoad(i, directExecutor());
+      ticker.advance(Duration.ofMillis(5));
+      loader.futures.poll().complete(-i);
+      assertThat(future.join()).isEqualTo(-i);
+    }
+    assertThat(deadline.hedgeDelayNanos).isEqualTo(Duration.ofMillis(5).toNanos());
+  }
+
+  @Test
+  public void recordLatency_hedged() {
+    var ticker = new FakeTicker();
+    var loader = new PendingLoader();
+    var deadline = DeadlineLoader.create(loader, 0, 0, 50, directExecutor(), ticker::read);
+    for (int i = 0; i < DeadlineLoader.MINIMUM_SAMPLES; i++) {
+      deadline.recordLatency(ONE_MILLI);
+    }
+    var future = deadline.asyncLoad(1, directExecutor());
+    ticker.advance(Duration.ofMillis(2));
+    await().until(() -> loader.futures.size() == 2);
+
+    // The winning hedge's latency includes the delay before it was started
+    ticker.advance(Duration.ofMillis(1));
+    var first = loader.futures.poll();
+    loader.futures.poll().complete(-1);
+    assertThat(future.join()).isEqualTo(-1);
+    assertThat(first.isCancelled()).isTrue();
+    assertThat(deadline.sampleCount.get()).isEqualTo(DeadlineLoader.MINIMUM_SAMPLES + 1);
+    assertThat(deadline.samples.get(DeadlineLoader.MINIMUM_SAMPLES))
+        .isEqualTo(Duration.ofMillis(3).toNanos());
+  }
+
+  @Test
+  public void recordLatency_disabled() {
+    var deadline = newDeadlineLoader(new PendingLoader(), ONE_MILLI, 0, 0, directExecutor());
+    for (int i = 0; i < DeadlineLoader.SAMPLE_SIZE; i++) {
+      deadline.recordLatency(1_000);
+    }
+    assertThat(deadline.hedgeDelayNanos).isEqualTo(0);
+  }
+
+  @Test
+  public void load_noTimeout() throws Exception {
+    var tasks = new ConcurrentLinkedQueue<Runnable>();
+    var deadline = newDeadlineLoader(
+        (CacheLoader<Integer, Integer>) key -> -key, 0, ONE_MILLI, 50, tasks::add);
+    assertThat(deadline.load(1)).isEqualTo(-1);
+    assertThat(tasks).isEmpty();
+  }
+
+  @Test
+  public void loadAll() throws Exception {
+    var loader = new CacheLoader<Integer, Integer>() {
+      @Override public Integer load(Integer key) {
+        throw new UnsupportedOperationException();
+      }
+      @Override public Map<Integer, Integer> loadAll(Set<? extends Integer> keys) {
+        return Map.of(1, -1);
+      }
+    };
+    var deadline = newDeadlineLoader(loader, Duration.ofMinutes(1).toNanos(),
+        0, 0, directExecutor());
+    assertThat(deadline).isInstanceOf(DeadlineLoader.BulkLoader.class);
+    assertThat(deadline.loadAll(Set.of(1))).containsExactly(1, -1);
+  }
+
+  @Test
+  public void cache_timeout() {
+    var loader = new PendingLoader();
+    AsyncLoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .loadTimeout(Duration.ofMillis(1))
+        .executor(directExecutor())
+        .buildAsync(loader);
+    var future = cache.get(1);
+
+    var error = assertThrows(CompletionException.class, future::join);
+    assertThat(error).hasCauseThat().isInstanceOf(TimeoutException.class);
+    await().untilAsserted(() -> assertThat(cache.asMap()).doesNotContainKey(1));
+  }
+
+  @Test
+  public void cache_timeout_loadLimiter() {
+    var limiter = LoadLimiter.of(1);
+    var latch = new CountDownLatch(1);
+    var started = new AtomicInteger();
+    AsyncLoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .loadTimeout(Duration.ofMillis(10))
+        .executor(ForkJoinPool.commonPool())
+        .loadLimiter(limiter)
+        .buildAsync(key -> {
+          started.incrementAndGet();
+          Uninterruptibles.awaitUninterruptibly(latch);
+          return -key;
+        });
+
+    var error = assertThrows(CompletionException.class, () -> cache.get(1).join());
+    assertThat(error).hasCauseThat().isInstanceOf(TimeoutException.class);
+    assertThat(limiter.inFlightCount()).isEqualTo(1);
+
+    // A timed out load does not allow another to exceed the limit
+    var next = cache.get(2);
+    assertThat(started.get()).isEqualTo(1);
+
+    latch.countDown();
+    await().until(() -> limiter.inFlightCount() == 0);
+    assertThat(next).isDone();
+  }
+
+  static <K, V> DeadlineLoader<K, V> newDeadlineLoader(AsyncCacheLoader<? super K, V> delegate,
+      long loadTimeoutNanos, long refreshTimeoutNanos, double hedgePercentile, Executor executor) {
+    return DeadlineLoader.create(delegate, loadTimeoutNanos,
+        refreshTimeoutNanos, hedgePercentile, executor, Ticker.systemTicker());
+  }
+
+  static final class PendingLoader implements AsyncCacheLoader<Integer, Integer> {
+    final ConcurrentLinkedQueue<CompletableFuture<Integer>> futures =
+        new ConcurrentLinkedQueue<>();
+
+    @Override
+    public CompletableFuture<Integer> asyncLoad(Integer key, Executor executor) {
+      var future = new CompletableFuture<Integer>();
+      futures.add(future);
+      return future;
+    }
+  }
+}
@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
 
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -101,6 +102,152 @@ public final class FrequencySketchTest {
     assertThat(sketch.frequency(0)).isEqualTo(1);
   }
 
+  @Test(dataProvider = "sketch")
+  public void restoreFrequency(FrequencySketch<Integer> sketch) {
+    sketch.restoreFrequency(item, 0);
+    assertThat(sketch.frequency(item)).isEqualTo(0);
+
+    sketch.restoreFrequency(item, 5);
+    assertThat(sketch.frequency(item)).isEqualTo(5);
+    sketch.restoreFrequency(item, 3);
+    assertThat(sketch.frequency(item)).isEqualTo(5);
+    sketch.restoreFrequency(item, 20);
+    assertThat(sketch.frequency(item)).isEqualTo(15);
+    assertThat(sketch.size).isEqualTo(0);
+  }
+
+  @Test
+  public void restoreFrequency_doorkeeper() {
+    var sketch = new FrequencySketch<Integer>(
+        /* compact= */ false, /* doorkeeper= */ true, /* penalties= */ false);
+    sketch.ensureCapacity(512);
+    sketch.restoreFrequency(item, 3);
+    assertThat(sketch.frequency(item)).isEqualTo(3);
+    for (long word : sketch.doorkeeper) {
+      assertThat(word).isEqualTo(0L);
+    }
+  }
+
+  @Test
+  public void ensureCapacity_compact() {
+    var sketch = new FrequencySketch<Integer>(
+        /* compact= */ true, /* doorkeeper= */ false, /* penalties= */ false);
+    sketch.ensureCapacity(512);
+    assertThat(sketch.table).hasLength(512 >> FrequencySketch.COMPACT_SHIFT);
+    assertThat(sketch.sampleSize).isEqualTo(10 * 512);
+
+    long[] table = sketch.table;
+    sketch.ensureCapacity(512);
+    assertThat(sketch.table).isSameInstanceAs(table);
+
+    sketch.ensureCapacity(1024);
+    assertThat(sketch.table).hasLength(1024 >> FrequencySketch.COMPACT_SHIFT);
+
+    sketch.ensureCapacity(0);
+    assertThat(sketch.table).hasLength(1024 >> FrequencySketch.COMPACT_SHIFT);
+  }
+
+  @Test
+  public void increment_compact() {
+    var sketch = new FrequencySketch<Integer>(
+        /* compact= */ true, /* doorkeeper= */ false, /* penalties= */ false);
+    sketch.ensureCapacity(2);
+    assertThat(sketch.table).hasLength(8);
+
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(item);
+    }
+    assertThat(sketch.frequency(item)).isEqualTo(15);
+  }
+
+  @Test
+  public void doorkeeper_absorbsFirstAccess() {
+    var sketch = new FrequencySketch<Integer>(
+        /* compact= */ false, /* doorkeeper= */ true, /* penalties= */ false);
+    sketch.ensureCapacity(512);
+    assertThat(sketch.doorkeeper).hasLength(512 >> 3);
+
+    sketch.increment(item);
+    assertThat(sketch.size).isEqualTo(0);
+    assertThat(sketch.frequency(item)).isEqualTo(1);
+    for (long slot : sketch.table) {
+      assertThat(slot).isEqualTo(0L);
+    }
+
+    sketch.increment(item);
+    assertThat(sketch.size).isEqualTo(1);
+    assertThat(sketch.frequency(item)).isEqualTo(2);
+
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(item);
+    }
+    assertThat(sketch.frequency(item)).isEqualTo(15);
+  }
+
+  @Test
+  public void doorkeeper_clearedOnReset() {
+    var sketch = new FrequencySketch<Integer>(
+        /* compact= */ false, /* doorkeeper= */ true, /* penalties= */ false);
+    sketch.ensureCapacity(512);
+    sketch.increment(item);
+    sketch.increment(item);
+    sketch.increment(item);
+    assertThat(sketch.frequency(item)).isEqualTo(3);
+
+    sketch.reset();
+    assertThat(sketch.frequency(item)).isEqualTo(1);
+    for (long word : sketch.doorkeeper) {
+      assertThat(word).isEqualTo(0L);
+    }
+  }
+
+  @Test
+  public void doorkeeper_clearedOnSweep() {
+    var sketch = new FrequencySketch<Integer>(
+        /* compact= */ true, /* doorkeeper= */ true, /* penalties= */ false);
+    sketch.ensureCapacity(4_096);
+    sketch.setIncrementalAging(true);
+    for (int i = 0; i < 1_000; i++) {
+      sketch.increment(i);
+    }
+
+    for (int i = 0; i <= sketch.blockMask; i++) {
+      sketch.ageBlock();
+    }
+    for (long word : sketch.doorkeeper) {
+      assertThat(word).isEqualTo(0L);
+    }
+  }
+
+  @Test
+  public void penalty() {
+    var sketch = new FrequencySketch<Integer>(
+        /* compact= */ false, /* doorkeeper= */ false, /* penalties= */ true);
+    sketch.recordPenalty(item, Long.MAX_VALUE);
+    assertThat(sketch.penalty(item)).isEqualTo(0);
+
+    sketch.ensureCapacity(512);
+    assertThat(sketch.penalties).hasLength(512);
+    assertThat(sketch.penalty(item)).isEqualTo(0);
+
+    sketch.recordPenalty(item, TimeUnit.MILLISECONDS.toNanos(10));
+    assertThat(sketch.penalty(item)).isEqualTo(FrequencySketch.penaltyLevel(
+        TimeUnit.MILLISECONDS.toNanos(10)));
+    sketch.recordPenalty(item, 0L);
+    assertThat(sketch.penalty(item)).isEqualTo(0);
+  }
+
+  @Test
+  public void penaltyLevel() {
+    assertThat(FrequencySketch.penaltyLevel(-1L)).isEqualTo(0);
+    assertThat(FrequencySketch.penaltyLevel(0L)).isEqualTo(0);
+    assertThat(FrequencySketch.penaltyLevel(1_024L)).isEqualTo(1);
+    assertThat(FrequencySketch.penaltyLevel(4 * 1_024L)).isEqualTo(2);
+    assertThat(FrequencySketch.penaltyLevel(TimeUnit.SECONDS.toNanos(1)))
+        .isLessThan(FrequencySketch.penaltyLevel(TimeUnit.SECONDS.toNanos(10)));
+    assertThat(FrequencySketch.penaltyLevel(Long.MAX_VALUE)).isEqualTo(15);
+  }
+
   @Test
   public void reset() {
     boolean reset = false;
@@ -135,6 +282,49 @@ public final class FrequencySketchTest {
     }
   }
 
+  @Test
+  public void incrementalAging_threshold() {
+    assertThat(makeSketch(512).agingInterval).isEqualTo(0);
+
+    var sketch = makeSketch(FrequencySketch.INCREMENTAL_AGING_THRESHOLD);
+    assertThat(sketch.agingInterval).isEqualTo(
+        (sketch.sampleSize / 2) / (sketch.blockMask + 1));
+  }
+
+  @Test
+  public void incrementalAging_sweep() {
+    FrequencySketch<Integer> sketch = makeSketch(512);
+    sketch.sampleSize = Integer.MAX_VALUE;
+    for (int i = 0; i < 100_000; i++) {
+      sketch.increment(i);
+    }
+
+    sketch.setIncrementalAging(true);
+    for (int i = 0; i <= sketch.blockMask; i++) {
+      sketch.ageBlock();
+    }
+    assertThat(sketch.agingBlock).isEqualTo(0);
+    for (long slot : sketch.table) {
+      assertThat(slot).isEqualTo(FrequencySketch.RESET_MASK);
+    }
+  }
+
+  @Test
+  public void incrementalAging_decays() {
+    FrequencySketch<Integer> sketch = makeSketch(512);
+    sketch.setIncrementalAging(true);
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(item);
+    }
+    assertThat(sketch.frequency(item)).isEqualTo(15);
+
+    for (int i = 0; i < 4 * sketch.sampleSize; i++) {
+      sketch.increment(ThreadLocalRandom.current().nextInt());
+    }
+    assertThat(sketch.frequency(item)).isLessThan(15);
+    assertThat(sketch.size).isLessThan(sketch.agingInterval);
+  }
+
   @Test
   public void heavyHitters() {
     FrequencySketch<Double> sketch = makeSketch(512);
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.testing.Awaits.await;
+import static com.github.benmanes.caffeine.testing.FutureSubject.assertThat;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static org.junit.Assert.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class LimitingLoaderTest {
+
+  @Test
+  public void limiter_invalid() {
+    assertThrows(IllegalArgumentException.class, () -> LoadLimiter.of(0));
+    assertThrows(IllegalArgumentException.class, () -> LoadLimiter.of(1, -1));
+  }
+
+  @Test
+  public void limiter_fifo() {
+    var limiter = LoadLimiter.of(1);
+    assertThat(limiter.acquire()).isDone();
+
+    var first = limiter.acquire();
+    var second = limiter.acquire();
+    assertThat(limiter.queueDepth()).isEqualTo(2);
+    assertThat(first).isNotDone();
+    assertThat(second).isNotDone();
+
+    limiter.release();
+    assertThat(first).isDone();
+    assertThat(second).isNotDone();
+    assertThat(limiter.inFlightCount()).isEqualTo(1);
+
+    limiter.release();
+    assertThat(second).isDone();
+    limiter.release();
+    assertThat(limiter.inFlightCount()).isEqualTo(0);
+    assertThat(limiter.queueDepth()).isEqualTo(0);
+  }
+
+  @Test
+  public void limiter_cancel() {
+    var limiter = LoadLimiter.of(1);
+    assertThat(limiter.acquire()).isDone();
+
+    var waiter = limiter.acquire();
+    assertThat(limiter.cancel(waiter)).isTrue();
+    assertThat(limiter.queueDepth()).isEqualTo(0);
+
+    limiter.release();
+    assertThat(limiter.inFlightCount()).isEqualTo(0);
+
+    var granted = limiter.acquire();
+    assertThat(limiter.cancel(granted)).isFalse();
+  }
+
+  @Test
+  public void limiter_shed() {
+    var limiter = LoadLimiter.of(1, 0);
+    assertThat(limiter.acquire()).isDone();
+    assertThat(limiter.acquire()).isNull();
+    assertThat(limiter.rejectedCount()).isEqualTo(1);
+    assertThat(limiter.toString()).contains("maximumConcurrency=1");
+  }
+
+  @Test
+  public void asyncLoad_limited() {
+    var limiter = LoadLimiter.of(2);
+    var loader = new PendingLoader();
+    var limiting = LimitingLoader.create(loader, limiter, directExecutor());
+    var futures = List.of(
+        limiting.asyncLoad(1, directExecutor()),
+        limiting.asyncLoad(2, directExecutor()),
+        limiting.asyncLoad(3, directExecutor()));
+    assertThat(loader.started).containsExactly(1, 2).inOrder();
+    assertThat(limiter.inFlightCount()).isEqualTo(2);
+    assertThat(limiter.queueDepth()).isEqualTo(1);
+
+    loader.futures.poll().complete(-1);
+    assertThat(loader.started).containsExactly(1, 2, 3).inOrder();
+    assertThat(limiter.queueDepth()).isEqualTo(0);
+
+    loader.futures.forEach(future -> future.complete(0));
+    assertThat(futures.get(0).join()).isEqualTo(-1);
+    assertThat(futures.get(2).join()).isEqualTo(0);
+    assertThat(limiter.inFlightCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void asyncLoad_cancelWhileQueued() {
+    var limiter = LoadLimiter.of(1);
+    var loader = new PendingLoader();
+    var limiting = LimitingLoader.create(loader, limiter, directExecutor());
+    limiting.asyncLoad(1, directExecutor());
+    var queued = limiting.asyncLoad(2, directExecutor());
+
+    queued.cancel(false);
+    assertThat(limiter.queueDepth()).isEqualTo(0);
+
+    loader.futures.poll().complete(-1);
+    assertThat(loader.started).containsExactly(1);
+    assertThat(limiter.inFlightCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void asyncLoad_rejected() {
+    var limiter = LoadLimiter.of(1, 0);
+    var loader = new PendingLoader();
+    var limiting = LimitingLoader.create(loader, limiter, directExecutor());
+    limiting.asyncLoad(1, directExecutor());
+
+    var error = assertThrows(CompletionException.class,
+        () -> limiting.asyncLoad(2, directExecutor()).join());
+    assertThat(error).hasCauseThat().isInstanceOf(RejectedExecutionException.class);
+    assertThat(limiting.asyncReload(2, 0, directExecutor()).isCancelled()).isTrue();
+    assertThat(limiter.rejectedCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void asyncLoad_failure() {
+    var limiter = LoadLimiter.of(1);
+    AsyncCacheLoader<Integer, Integer> loader = (key, executor) -> {
+      throw new IllegalStateException();
+    };
+    var limiting = LimitingLoader.create(loader, limiter, directExecutor());
+    assertThat(limiting.asyncLoad(1, directExecutor()).isCompletedExceptionally()).isTrue();
+    assertThat(limiter.inFlightCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void asyncLoad_cancelWhileRunning() {
+    var limiter = LoadLimiter.of(1);
+    var latch = new CountDownLatch(1);
+    AsyncLoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .executor(ForkJoinPool.commonPool())
+        .loadLimiter(limiter)
+        .buildAsync(key -> {
+          Uninterruptibles.awaitUninterruptibly(latch);
+          return -key;
+        });
+    var future = cache.get(1);
+    await().until(() -> limiter.inFlightCount() == 1);
+
+    // The permit is held until the blocking load returns
+    future.cancel(/* mayInterruptIfRunning */ true);
+    assertThat(limiter.inFlightCount()).isEqualTo(1);
+
+    latch.countDown();
+    await().until(() -> limiter.inFlightCount() == 0);
+  }
+
+  @Test
+  public void load_blocks() throws InterruptedException {
+    var limiter = LoadLimiter.of(1);
+    var latch = new CountDownLatch(1);
+    LoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .loadLimiter(limiter)
+        .build(key -> {
+          Uninterruptibles.awaitUninterruptibly(latch);
+          return -key;
+        });
+    var first = new Thread(() -> cache.get(1));
+    var second = new Thread(() -> cache.get(2));
+    first.start();
+    await().until(() -> limiter.inFlightCount() == 1);
+    second.start();
+    await().until(() -> limiter.queueDepth() == 1);
+
+    latch.countDown();
+    first.join();
+    second.join();
+    assertThat(cache.asMap()).containsExactly(1, -1, 2, -2);
+    assertThat(limiter.inFlightCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void load_rejected() {
+    var limiter = LoadLimiter.of(1, 0);
+    assertThat(limiter.acquire()).isDone();
+    LoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .loadLimiter(limiter)
+        .build(key -> -key);
+    assertThrows(RejectedExecutionException.class, () -> cache.get(1));
+  }
+
+  @Test
+  public void loadAll() {
+    var limiter = LoadLimiter.of(1);
+    var batches = new ConcurrentLinkedQueue<Set<Integer>>();
+    LoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .loadLimiter(limiter)
+        .build(new CacheLoader<Integer, Integer>() {
+          @Override public Integer load(Integer key) {
+            throw new UnsupportedOperationException();
+          }
+          @Override public Map<Integer, Integer> loadAll(Set<? extends Integer> keys) {
+            batches.add(Set.copyOf(keys));
+            return Map.of(1, -1, 2, -2);
+          }
+        });
+    assertThat(cache.getAll(List.of(1, 2))).containsExactly(1, -1, 2, -2);
+    assertThat(batches).containsExactly(Set.of(1, 2));
+    assertThat(limiter.inFlightCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void loadAll_notImplemented() {
+    var limiting = LimitingLoader.create(
+        (CacheLoader<Integer, Integer>) key -> -key, LoadLimiter.of(1), directExecutor());
+    assertThat(limiting).isNotInstanceOf(LimitingLoader.BulkLoader.class);
+    assertThat(LocalLoadingCache.hasLoadAll(limiting)).isFalse();
+  }
+
+  static final class PendingLoader implements AsyncCacheLoader<Integer, Integer> {
+    final ConcurrentLinkedQueue<CompletableFuture<Integer>> futures =
+        new ConcurrentLinkedQueue<>();
+    final ConcurrentLinkedQueue<Integer> started = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public CompletableFuture<Integer> asyncLoad(Integer key, Executor executor) {
+      var future = new CompletableFuture<Integer>();
+      started.add(key);
+      futures.add(future);
+      return future;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.testing.Awaits.await;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+import com.google.common.testing.NullPointerTester;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class MaintenanceThreadTest {
+
+  @Test
+  public void nullParameters() {
+    var npeTester = new NullPointerTester();
+    npeTester.testAllPublicStaticMethods(MaintenanceThread.class);
+    npeTester.testAllPublicInstanceMethods(MaintenanceThread.shared());
+  }
+
+  @Test
+  public void shared() {
+    var thread = new AtomicReference<Thread>();
+    MaintenanceThread.shared().execute(() -> thread.set(Thread.currentThread()));
+    await().untilAsserted(() -> assertThat(thread.get()).isNotNull());
+
+    assertThat(thread.get().isDaemon()).isTrue();
+    assertThat(thread.get().getName()).isEqualTo("Caffeine-Maintenance");
+    assertThat(MaintenanceThread.shared()).isSameInstanceAs(MaintenanceThread.shared());
+  }
+
+  @Test
+  public void create() {
+    var maintenance = MaintenanceThread.create(task -> new Thread(task, "test-maintenance"));
+    var thread = new AtomicReference<Thread>();
+    maintenance.execute(() -> thread.set(Thread.currentThread()));
+    await().untilAsserted(() -> assertThat(maintenance.drainCount()).isEqualTo(1));
+
+    assertThat(thread.get().getName()).isEqualTo("test-maintenance");
+    assertThat(maintenance.totalDrainDelay()).isAtLeast(Duration.ZERO);
+    assertThat(maintenance.totalDrainTime()).isAtLeast(Duration.ZERO);
+    assertThat(maintenance.maximumDrainDelay()).isAtMost(maintenance.totalDrainDelay());
+    assertThat(maintenance.toString()).contains("drainCount=1");
+  }
+
+  @Test
+  public void execute_exception() {
+    var maintenance = MaintenanceThread.create(Thread::new);
+    maintenance.execute(() -> { throw new IllegalStateException(); });
+    await().untilAsserted(() -> assertThat(maintenance.drainCount()).isEqualTo(1));
+
+    maintenance.execute(() -> {});
+    await().untilAsserted(() -> assertThat(maintenance.drainCount()).isEqualTo(2));
+  }
+
+  @Test
+  public void cache() {
+    var maintenance = MaintenanceThread.create(Thread::new);
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .maintenanceThread(maintenance)
+        .executor(directExecutor())
+        .maximumSize(10)
+        .build();
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, i);
+    }
+    await().untilAsserted(() -> {
+      assertThat(maintenance.drainCount()).isGreaterThan(0);
+      assertThat(cache.estimatedSize()).isAtMost(10);
+    });
+  }
+}
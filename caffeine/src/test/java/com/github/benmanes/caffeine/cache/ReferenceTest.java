@@ -55,6 +55,7 @@ import org.testng.annotations.Test;
 import com.github.benmanes.caffeine.cache.References.InternalReference;
 import com.github.benmanes.caffeine.cache.References.LookupKeyEqualsReference;
 import com.github.benmanes.caffeine.cache.References.LookupKeyReference;
+import com.github.benmanes.caffeine.cache.References.ReusableLookupKeyReference;
 import com.github.benmanes.caffeine.cache.References.SoftValueReference;
 import com.github.benmanes.caffeine.cache.References.WeakKeyEqualsReference;
 import com.github.benmanes.caffeine.cache.References.WeakKeyReference;
@@ -1292,6 +1293,25 @@ public final class ReferenceTest {
         .testEquals();
   }
 
+  @Test
+  @SuppressWarnings("ClassEscapesDefinedScope")
+  public void reference_reusableLookupKey() {
+    var first = new Int(1);
+    var second = new Int(1);
+    var lookupKey = ReusableLookupKeyReference.acquire(first);
+    assertThat(lookupKey.get()).isSameInstanceAs(first);
+    assertThat(lookupKey.getKeyReference()).isSameInstanceAs(lookupKey);
+    assertThat(lookupKey.hashCode()).isEqualTo(System.identityHashCode(first));
+    assertThat(lookupKey.toString()).contains("key=" + first);
+    assertThat(lookupKey.equals(new WeakKeyReference<>(first, null))).isTrue();
+    assertThat(lookupKey.equals(new WeakKeyReference<>(second, null))).isFalse();
+    lookupKey.release();
+    assertThat(lookupKey.get()).isNull();
+
+    assertThat(ReusableLookupKeyReference.acquire(second)).isSameInstanceAs(lookupKey);
+    lookupKey.release();
+  }
+
   @DataProvider(name = "references")
   public Object[][] providesReferences() {
     var item = new Int(1);
@@ -139,6 +139,30 @@ public final class ReserializableSubject extends Subject {
     checkRefreshAfterWrite(original, copy);
     checkRemovalListener(original, copy);
     checkEvictionListener(original, copy);
+    checkPolicyOptions(original, copy);
+  }
+
+  private void checkPolicyOptions(
+      BoundedLocalCache<?, ?> original, BoundedLocalCache<?, ?> copy) {
+    check("probabilisticRefresh").that(copy.probabilisticRefresh)
+        .isEqualTo(original.probabilisticRefresh);
+    check("refreshAheadFrequency").that(copy.refreshAheadFrequency)
+        .isEqualTo(original.refreshAheadFrequency);
+    check("refreshAheadConcurrency").that(copy.refreshAheadConcurrency)
+        .isEqualTo(original.refreshAheadConcurrency);
+    check("weightAwareAdmission").that(copy.weightAwareAdmission)
+        .isEqualTo(original.weightAwareAdmission);
+    check("costAware").that(copy.costAware).isEqualTo(original.costAware);
+    check("windowOptimizer").that(copy.windowOptimizer == null)
+        .isEqualTo(original.windowOptimizer == null);
+    check("maintenanceThread").that(copy.maintenanceExecutor instanceof MaintenanceThread)
+        .isEqualTo(original.maintenanceExecutor instanceof MaintenanceThread);
+    if (original.evicts()) {
+      check("frequencySketch().hasDoorkeeper").that(copy.frequencySketch().hasDoorkeeper)
+          .isEqualTo(original.frequencySketch().hasDoorkeeper);
+      check("frequencySketch().lengthShift").that(copy.frequencySketch().lengthShift)
+          .isEqualTo(original.frequencySketch().lengthShift);
+    }
   }
 
   private void checkRefreshAfterWrite(
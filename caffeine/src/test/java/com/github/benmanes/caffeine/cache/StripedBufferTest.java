@@ -17,6 +17,7 @@ package com.github.benmanes.caffeine.cache;
 
 import static com.github.benmanes.caffeine.cache.StripedBuffer.MAXIMUM_TABLE_SIZE;
 import static com.github.benmanes.caffeine.cache.StripedBuffer.NCPU;
+import static com.github.benmanes.caffeine.cache.StripedBuffer.SHRINK_THRESHOLD;
 import static com.google.common.truth.Truth.assertThat;
 
 import java.util.ArrayList;
@@ -98,6 +99,67 @@ public final class StripedBufferTest {
     assertThat(buffer.drains).isEqualTo(1);
   }
 
+  @Test
+  public void shrink() {
+    var buffer = newExpandedBuffer(/* length= */ 4);
+    for (int i = 0; i < SHRINK_THRESHOLD - 1; i++) {
+      buffer.drainTo(e -> {});
+    }
+    assertThat(buffer.table).hasLength(4);
+
+    buffer.drainTo(e -> {});
+    assertThat(buffer.table).hasLength(2);
+    assertThat(buffer.uncontendedDrains).isEqualTo(0);
+  }
+
+  @Test
+  public void shrink_contended() {
+    var buffer = newExpandedBuffer(/* length= */ 4);
+    for (int i = 0; i < (2 * SHRINK_THRESHOLD); i++) {
+      buffer.recordContention();
+      buffer.drainTo(e -> {});
+      assertThat(buffer.contended).isFalse();
+    }
+    assertThat(buffer.table).hasLength(4);
+  }
+
+  @Test
+  public void shrink_minimum() {
+    var buffer = newExpandedBuffer(/* length= */ 1);
+    for (int i = 0; i < (2 * SHRINK_THRESHOLD); i++) {
+      buffer.drainTo(e -> {});
+    }
+    assertThat(buffer.table).hasLength(1);
+  }
+
+  @Test
+  public void maximumTableSize_platformThread() {
+    assertThat(StripedBuffer.isVirtual(Thread.currentThread())).isFalse();
+    assertThat(StripedBuffer.maximumTableSize(Thread.currentThread()))
+        .isEqualTo(MAXIMUM_TABLE_SIZE);
+  }
+
+  @Test
+  public void recordContention_expand() {
+    var buffer = new FakeBuffer<Integer>(Buffer.FAILED);
+    assertThat(buffer.offer(ELEMENT)).isEqualTo(Buffer.SUCCESS);
+    assertThat(buffer.contended).isFalse();
+
+    assertThat(buffer.offer(ELEMENT)).isEqualTo(Buffer.FAILED);
+    assertThat(buffer.contended).isTrue();
+  }
+
+  private static FakeBuffer<Integer> newExpandedBuffer(int length) {
+    var buffer = new FakeBuffer<Integer>(Buffer.SUCCESS);
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    Buffer<Integer>[] table = new Buffer[length];
+    for (int i = 0; i < length; i++) {
+      table[i] = buffer.create(ELEMENT);
+    }
+    buffer.table = table;
+    return buffer;
+  }
+
   @DataProvider(name = "buffers")
   public Object[] providesBuffers() {
     var results = List.of(Buffer.SUCCESS, Buffer.FAILED, Buffer.FULL);
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.testing.Awaits.await;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.time.Duration;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class TickerTest {
+
+  @Test
+  public void systemTicker() {
+    long start = System.nanoTime();
+    assertThat(Ticker.systemTicker().read()).isAtLeast(start);
+  }
+
+  @Test
+  public void disabledTicker() {
+    assertThat(Ticker.disabledTicker().read()).isEqualTo(0L);
+  }
+
+  @Test
+  @SuppressWarnings("NullAway")
+  public void coarseTicker_null() {
+    assertThrows(NullPointerException.class, () -> Ticker.coarseTicker(null));
+  }
+
+  @Test(dataProvider = "invalidResolutions")
+  public void coarseTicker_invalid(Duration resolution) {
+    assertThrows(IllegalArgumentException.class, () -> Ticker.coarseTicker(resolution));
+  }
+
+  @Test
+  public void coarseTicker() {
+    long start = System.nanoTime();
+    var ticker = Ticker.coarseTicker(Duration.ofMillis(1));
+    long initial = ticker.read();
+    assertThat(initial).isAtLeast(start);
+    await().untilAsserted(() -> assertThat(ticker.read()).isGreaterThan(initial));
+    assertThat(ticker.read()).isAtMost(System.nanoTime());
+    assertThat(ticker.toString()).contains("PT0.001S");
+  }
+
+  @Test
+  public void coarseTicker_shared() {
+    var ticker = Ticker.coarseTicker(Duration.ofMillis(2));
+    assertThat(Ticker.coarseTicker(Duration.ofMillis(2))).isSameInstanceAs(ticker);
+    assertThat(Ticker.coarseTicker(Duration.ofMillis(3))).isNotSameInstanceAs(ticker);
+    assertThat(CoarseTicker.TICKERS.get(Duration.ofMillis(2).toNanos()).get())
+        .isSameInstanceAs(ticker);
+  }
+
+  @Test
+  public void coarseTicker_unreachable() {
+    var updater = new CoarseTicker.Updater(new CoarseTicker(Duration.ofMillis(1).toNanos()));
+    updater.reference.clear();
+    updater.run();
+  }
+
+  @DataProvider(name = "invalidResolutions")
+  public Object[] providesInvalidResolutions() {
+    return new Object[] { Duration.ZERO, Duration.ofNanos(-1), Duration.ofSeconds(2) };
+  }
+}
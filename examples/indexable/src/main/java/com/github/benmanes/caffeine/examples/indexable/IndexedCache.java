@@ -27,10 +27,11 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Function;
 
+import org.jspecify.annotations.Nullable;
+
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.Ticker;
-import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Striped;
 
 /**
@@ -56,7 +57,7 @@ public final class IndexedCache<K, V> {
     this.locks = Striped.lock(1_024);
     this.indexers = indexers;
     this.store = cacheBuilder
-        .evictionListener((key, value, cause) -> indexes.keySet().removeAll(indexes.get(key)))
+        .evictionListener((key, value, cause) -> removeIndex(indexes.get(key)))
         .build();
   }
 
@@ -104,8 +105,13 @@ public final class IndexedCache<K, V> {
     requireNonNull(value);
     var index = buildIndex(value);
     store.asMap().compute(index.getFirst(), (key, oldValue) -> {
-      if (oldValue != null) {
-        indexes.keySet().removeAll(Sets.difference(indexes.get(index.getFirst()), index));
+      var oldIndex = indexes.get(index.getFirst());
+      if ((oldValue != null) && (oldIndex != null)) {
+        for (var indexKey : oldIndex) {
+          if (!index.contains(indexKey)) {
+            indexes.remove(indexKey, oldIndex);
+          }
+        }
       }
       for (var indexKey : index) {
         indexes.put(indexKey, index);
@@ -122,11 +128,25 @@ public final class IndexedCache<K, V> {
     }
 
     store.asMap().computeIfPresent(index.getFirst(), (k, v) -> {
-      indexes.keySet().removeAll(indexes.get(key));
+      removeIndex(indexes.get(k));
       return null;
     });
   }
 
+  /**
+   * Discards the entry's keys from the index. This visits only the entry's own keys, rather than
+   * scanning the index, and a key is removed only if it still refers to the entry. The index may
+   * be absent if it was already discarded by a concurrent removal.
+   */
+  private void removeIndex(@Nullable SequencedSet<K> index) {
+    if (index == null) {
+      return;
+    }
+    for (var indexKey : index) {
+      indexes.remove(indexKey, index);
+    }
+  }
+
   /** Returns a sequence of keys where the first item is the primary key. */
   private SequencedSet<K> buildIndex(V value) {
     var index = LinkedHashSet.<K>newLinkedHashSet(indexers.size());
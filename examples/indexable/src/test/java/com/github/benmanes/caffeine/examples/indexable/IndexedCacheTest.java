@@ -72,6 +72,24 @@ public final class IndexedCacheTest {
     assertThat(cache.indexes).isEmpty();
   }
 
+  @Test
+  public void put_replacesKeys() {
+    var cache = new IndexedCache.Builder<UserKey, User>()
+        .addSecondaryKey(user -> new UserByLogin(user.login()))
+        .primaryKey(user -> new UserById(user.id()))
+        .build(this::findUser);
+    cache.put(new User(1, "john.doe", "+1 (555) 555-5555"));
+    cache.put(new User(2, "jane.doe", "+1 (777) 777-7777"));
+    assertThat(cache.indexes).hasSize(4);
+
+    var renamed = new User(1, "johnny.doe", "+1 (555) 555-5555");
+    cache.put(renamed);
+    assertThat(cache.indexes).hasSize(4);
+    assertThat(cache.getIfPresent(new UserByLogin("john.doe"))).isNull();
+    assertThat(cache.getIfPresent(new UserByLogin("johnny.doe"))).isSameInstanceAs(renamed);
+    assertThat(cache.getIfPresent(new UserByLogin("jane.doe"))).isNotNull();
+  }
+
   /** Returns the user found in the system of record. */
   private User findUser(UserKey key) {
     Predicate<User> predicate = switch (key) {
@@ -0,0 +1,19 @@
+plugins {
+  `java-library`
+  alias(libs.plugins.versions)
+}
+
+dependencies {
+  implementation(libs.caffeine)
+
+  testImplementation(libs.junit)
+  testImplementation(libs.truth)
+}
+
+testing.suites {
+  val test by getting(JvmTestSuite::class) {
+    useJUnitJupiter()
+  }
+}
+
+java.toolchain.languageVersion = JavaLanguageVersion.of(23)
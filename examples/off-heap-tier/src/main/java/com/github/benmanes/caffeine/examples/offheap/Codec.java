@@ -0,0 +1,30 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.examples.offheap;
+
+/**
+ * Converts a value to and from the binary form that is stored outside of the Java heap.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public interface Codec<V> {
+
+  /** Returns the serialized form of the value. */
+  byte[] encode(V value);
+
+  /** Returns the value that was serialized into the bytes. */
+  V decode(byte[] bytes);
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.examples.offheap;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.util.Objects.requireNonNull;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+
+/**
+ * A log-structured store that retains serialized values in a fixed-size region of native memory.
+ * The values are appended at the write position, which wraps around to the start of the slab when
+ * the end is reached. The oldest entries that overlap with the region being written to are
+ * discarded, so the store behaves like a FIFO cache whose capacity is measured in bytes.
+ * <p>
+ * Only the keys and the slot descriptors reside on the heap, which keeps the memory reachable by
+ * the garbage collector proportional to the number of entries rather than to their size.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class SlabStore<K, V> implements AutoCloseable {
+  final ConcurrentStatsCounter statsCounter;
+  final ArrayDeque<Slot<K>> log;
+  final Map<K, Slot<K>> index;
+  final MemorySegment slab;
+  final ReentrantLock lock;
+  final Codec<V> codec;
+  final Arena arena;
+
+  long writeOffset;
+
+  SlabStore(long capacity, Codec<V> codec) {
+    this.arena = Arena.ofShared();
+    this.codec = requireNonNull(codec);
+    this.slab = arena.allocate(capacity);
+    this.statsCounter = new ConcurrentStatsCounter();
+    this.lock = new ReentrantLock();
+    this.log = new ArrayDeque<>();
+    this.index = new HashMap<>();
+  }
+
+  /**
+   * Stores the value by serializing it into the slab, discarding the oldest entries if necessary.
+   *
+   * @return if the value was stored, or {@code false} if it is larger than the slab
+   */
+  public boolean put(K key, V value) {
+    byte[] bytes = codec.encode(value);
+    if (bytes.length > slab.byteSize()) {
+      statsCounter.recordEviction(bytes.length, RemovalCause.SIZE);
+      return false;
+    }
+
+    lock.lock();
+    try {
+      index.remove(key);
+      if ((writeOffset + bytes.length) > slab.byteSize()) {
+        reclaim(writeOffset, slab.byteSize());
+        writeOffset = 0;
+      }
+      reclaim(writeOffset, writeOffset + bytes.length);
+
+      MemorySegment.copy(bytes, 0, slab, JAVA_BYTE, writeOffset, bytes.length);
+      var slot = new Slot<>(key, writeOffset, bytes.length);
+      writeOffset += bytes.length;
+      index.put(key, slot);
+      log.add(slot);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Removes and returns the value associated with the key, or {@code null} if not present. */
+  public V remove(K key) {
+    byte[] bytes;
+    lock.lock();
+    try {
+      var slot = index.remove(key);
+      if (slot == null) {
+        statsCounter.recordMisses(1);
+        return null;
+      }
+      bytes = new byte[slot.length()];
+      MemorySegment.copy(slab, JAVA_BYTE, slot.offset(), bytes, 0, slot.length());
+    } finally {
+      lock.unlock();
+    }
+    statsCounter.recordHits(1);
+    return codec.decode(bytes);
+  }
+
+  /** Discards the value associated with the key, if present. */
+  public void invalidate(K key) {
+    lock.lock();
+    try {
+      index.remove(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of entries in the store. */
+  public int size() {
+    lock.lock();
+    try {
+      return index.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns a snapshot of the store's statistics, where the eviction weight is in bytes. */
+  public CacheStats stats() {
+    return statsCounter.snapshot();
+  }
+
+  /** Releases the native memory, after which the store may no longer be used. */
+  @Override
+  public void close() {
+    arena.close();
+  }
+
+  /**
+   * Discards the slots that start within the region about to be overwritten. The log is in write
+   * order, so every slot from the previous pass over the slab lies at or after the write position
+   * and the oldest of these is at the head.
+   */
+  private void reclaim(long start, long end) {
+    for (;;) {
+      var slot = log.peek();
+      if ((slot == null) || (slot.offset() < start) || (slot.offset() >= end)) {
+        return;
+      }
+      log.poll();
+      if (index.get(slot.key()) == slot) {
+        statsCounter.recordEviction(slot.length(), RemovalCause.SIZE);
+        index.remove(slot.key());
+      }
+    }
+  }
+
+  record Slot<K>(K key, long offset, int length) {}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.examples.offheap;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * A cache that retains its hottest entries on the heap and demotes the entries evicted by the size
+ * policy into a second tier stored in native memory. When an off-heap entry is requested it is
+ * promoted back onto the heap, so each entry resides in only one of the tiers at a time. This allows
+ * for a higher hit rate per gigabyte of heap as the bulk of the data is not traced by the garbage
+ * collector, at the cost of serializing the values that move between the tiers.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class TieredCache<K, V> implements AutoCloseable {
+  final SlabStore<K, V> offHeap;
+  final Cache<K, V> onHeap;
+
+  private TieredCache(Builder<K, V> builder) {
+    this.offHeap = new SlabStore<>(builder.offHeapBytes, builder.codec);
+    this.onHeap = builder.cacheBuilder
+        .evictionListener((K key, V value, RemovalCause cause) -> {
+          // Runs atomically with the removal, so a concurrent promotion cannot miss the entry
+          if (cause == RemovalCause.SIZE) {
+            offHeap.put(key, value);
+          }
+        })
+        .build();
+  }
+
+  /** Returns the value associated with the key or {@code null} if not found in either tier. */
+  public V getIfPresent(K key) {
+    V value = onHeap.getIfPresent(key);
+    return (value == null) ? onHeap.asMap().computeIfAbsent(key, offHeap::remove) : value;
+  }
+
+  /**
+   * Returns the value associated with the key, promoting it from the off-heap tier or obtaining it
+   * from the {@code mappingFunction} if necessary.
+   */
+  public V get(K key, Function<? super K, ? extends V> mappingFunction) {
+    return onHeap.get(key, k -> {
+      V value = offHeap.remove(k);
+      return (value == null) ? mappingFunction.apply(k) : value;
+    });
+  }
+
+  /** Associates the value with the key, replacing any stale copy in the off-heap tier. */
+  public void put(K key, V value) {
+    onHeap.asMap().compute(key, (k, oldValue) -> {
+      offHeap.invalidate(k);
+      return value;
+    });
+  }
+
+  /** Discards any value for the key in both tiers. */
+  public void invalidate(K key) {
+    onHeap.asMap().compute(key, (k, oldValue) -> {
+      offHeap.invalidate(k);
+      return null;
+    });
+  }
+
+  /** Returns the on-heap tier's statistics. */
+  public CacheStats stats() {
+    return onHeap.stats();
+  }
+
+  /**
+   * Returns the off-heap tier's statistics. A hit is a promotion back onto the heap and the
+   * eviction weight is the number of bytes that were discarded to make room for newer entries.
+   */
+  public CacheStats offHeapStats() {
+    return offHeap.stats();
+  }
+
+  /** Releases the off-heap tier's native memory. */
+  @Override
+  public void close() {
+    onHeap.invalidateAll();
+    offHeap.close();
+  }
+
+  public static final class Builder<K, V> {
+    final Caffeine<Object, Object> cacheBuilder;
+
+    long offHeapBytes;
+    Codec<V> codec;
+
+    public Builder() {
+      cacheBuilder = Caffeine.newBuilder().recordStats();
+    }
+
+    /** See {@link Caffeine#maximumSize(long)}. */
+    public Builder<K, V> maximumSize(long maximumSize) {
+      cacheBuilder.maximumSize(maximumSize);
+      return this;
+    }
+
+    /** See {@link Caffeine#executor(Executor)}. */
+    public Builder<K, V> executor(Executor executor) {
+      cacheBuilder.executor(executor);
+      return this;
+    }
+
+    /** Sets the capacity of the off-heap tier in bytes and how the values are serialized. */
+    public Builder<K, V> offHeapTier(long bytes, Codec<V> codec) {
+      if (bytes <= 0) {
+        throw new IllegalArgumentException("bytes must be positive: " + bytes);
+      }
+      this.codec = requireNonNull(codec);
+      this.offHeapBytes = bytes;
+      return this;
+    }
+
+    /** Returns a cache that spills the entries evicted from the heap into native memory. */
+    public TieredCache<K, V> build() {
+      if (codec == null) {
+        throw new IllegalStateException("offHeapTier was not set");
+      }
+      return new TieredCache<>(this);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.examples.offheap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class TieredCacheTest {
+
+  @Test
+  public void demoteAndPromote() {
+    try (var cache = newCache(/* maximumSize= */ 1, /* bytes= */ 1_024)) {
+      cache.put(1, "one");
+      cache.put(2, "two");
+      cache.onHeap.cleanUp();
+
+      assertThat(cache.onHeap.asMap()).hasSize(1);
+      assertThat(cache.offHeap.size()).isEqualTo(1);
+
+      for (int key = 1; key <= 2; key++) {
+        assertThat(cache.getIfPresent(key)).isEqualTo(key == 1 ? "one" : "two");
+        cache.onHeap.cleanUp();
+      }
+      assertThat(cache.onHeap.asMap()).hasSize(1);
+      assertThat(cache.offHeap.size()).isEqualTo(1);
+      assertThat(cache.offHeapStats().hitCount()).isAtLeast(1);
+    }
+  }
+
+  @Test
+  public void get_load() {
+    try (var cache = newCache(/* maximumSize= */ 1, /* bytes= */ 1_024)) {
+      assertThat(cache.get(1, key -> "one")).isEqualTo("one");
+      assertThat(cache.offHeapStats().missCount()).isEqualTo(1);
+      assertThat(cache.stats().loadSuccessCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void put_replacesOffHeap() {
+    try (var cache = newCache(/* maximumSize= */ 1, /* bytes= */ 1_024)) {
+      cache.put(1, "one");
+      cache.put(2, "two");
+      cache.onHeap.cleanUp();
+
+      var demoted = cache.offHeap.index.keySet().iterator().next();
+      cache.put(demoted, "updated");
+      assertThat(cache.offHeap.index).doesNotContainKey(demoted);
+    }
+  }
+
+  @Test
+  public void invalidate() {
+    try (var cache = newCache(/* maximumSize= */ 1, /* bytes= */ 1_024)) {
+      cache.put(1, "one");
+      cache.put(2, "two");
+      cache.onHeap.cleanUp();
+
+      cache.invalidate(1);
+      cache.invalidate(2);
+      assertThat(cache.getIfPresent(1)).isNull();
+      assertThat(cache.getIfPresent(2)).isNull();
+    }
+  }
+
+  @Test
+  public void offHeap_evictsOldest() {
+    try (var store = new SlabStore<Integer, String>(/* capacity= */ 8, new StringCodec())) {
+      assertThat(store.put(1, "aaaa")).isTrue();
+      assertThat(store.put(2, "bbbb")).isTrue();
+      assertThat(store.put(3, "cccc")).isTrue();
+
+      assertThat(store.index.keySet()).containsExactly(2, 3);
+      assertThat(store.stats().evictionCount()).isEqualTo(1);
+      assertThat(store.stats().evictionWeight()).isEqualTo(4);
+      assertThat(store.remove(2)).isEqualTo("bbbb");
+      assertThat(store.remove(3)).isEqualTo("cccc");
+      assertThat(store.remove(1)).isNull();
+    }
+  }
+
+  @Test
+  public void offHeap_tooLarge() {
+    try (var store = new SlabStore<Integer, String>(/* capacity= */ 2, new StringCodec())) {
+      assertThat(store.put(1, "abc")).isFalse();
+      assertThat(store.size()).isEqualTo(0);
+    }
+  }
+
+  private static TieredCache<Integer, String> newCache(long maximumSize, long bytes) {
+    return new TieredCache.Builder<Integer, String>()
+        .offHeapTier(bytes, new StringCodec())
+        .maximumSize(maximumSize)
+        .executor(Runnable::run)
+        .build();
+  }
+
+  static final class StringCodec implements Codec<String> {
+    @Override public byte[] encode(String value) {
+      return value.getBytes(UTF_8);
+    }
+    @Override public String decode(byte[] bytes) {
+      return new String(bytes, UTF_8);
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.examples.sharded;
+
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * A cache that partitions its entries across independent shards, each with its own eviction policy
+ * and maintenance lock. A single cache serializes its policy maintenance, which is cheap enough for
+ * most workloads, but a write-heavy application on a machine with many cores may find that its
+ * writers contend on that lock. Routing each key to a shard spreads the maintenance work so that it
+ * can proceed in parallel.
+ * <p>
+ * The maximum size is divided evenly among the shards, so the global bound is enforced only
+ * approximately. A skewed key distribution may evict from one shard while another has spare
+ * capacity, and the frequency history of each shard is limited to the keys that it owns, so the
+ * hit rate may be lower than that of a single cache of the same total size.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class ShardedCache<K, V> {
+  final Cache<K, V>[] shards;
+  final int mask;
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private ShardedCache(Builder<K, V> builder) {
+    shards = new Cache[builder.shards];
+    long shardMaximum = Math.ceilDiv(builder.maximumSize, builder.shards);
+    for (int i = 0; i < shards.length; i++) {
+      var cacheBuilder = Caffeine.newBuilder().maximumSize(shardMaximum);
+      if (builder.executor != null) {
+        cacheBuilder.executor(builder.executor);
+      }
+      if (builder.recordStats) {
+        cacheBuilder.recordStats();
+      }
+      shards[i] = cacheBuilder.build();
+    }
+    mask = shards.length - 1;
+  }
+
+  /** Returns the value associated with the key or {@code null} if not present. */
+  public V getIfPresent(K key) {
+    return shardFor(key).getIfPresent(key);
+  }
+
+  /**
+   * Returns the value associated with the key, obtaining it from the {@code mappingFunction} if
+   * necessary.
+   */
+  public V get(K key, Function<? super K, ? extends V> mappingFunction) {
+    return shardFor(key).get(key, mappingFunction);
+  }
+
+  /** Associates the value with the key in the shard that owns it. */
+  public void put(K key, V value) {
+    shardFor(key).put(key, value);
+  }
+
+  /** Discards any value for the key. */
+  public void invalidate(K key) {
+    shardFor(key).invalidate(key);
+  }
+
+  /** Discards all entries in every shard. */
+  public void invalidateAll() {
+    for (var shard : shards) {
+      shard.invalidateAll();
+    }
+  }
+
+  /** Returns the approximate number of entries across all of the shards. */
+  public long estimatedSize() {
+    long size = 0;
+    for (var shard : shards) {
+      size += shard.estimatedSize();
+    }
+    return size;
+  }
+
+  /** Returns the sum of the shards' statistics. */
+  public CacheStats stats() {
+    var stats = CacheStats.empty();
+    for (var shard : shards) {
+      stats = stats.plus(shard.stats());
+    }
+    return stats;
+  }
+
+  /** Performs any pending maintenance operations needed by each shard. */
+  public void cleanUp() {
+    for (var shard : shards) {
+      shard.cleanUp();
+    }
+  }
+
+  /** Returns the shard that owns the key. */
+  Cache<K, V> shardFor(K key) {
+    return shards[spread(key.hashCode()) & mask];
+  }
+
+  /**
+   * Applies a supplemental hash function so that the shard index does not depend on the same low
+   * order bits that the shard's hash table uses to select a bin.
+   */
+  static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+
+  public static final class Builder<K, V> {
+    long maximumSize;
+    Executor executor;
+    boolean recordStats;
+    int shards;
+
+    /**
+     * Creates a builder whose number of shards defaults to the number of available processors,
+     * rounded up to a power of two.
+     */
+    public Builder() {
+      shards = Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1);
+      maximumSize = -1;
+    }
+
+    /**
+     * Sets the number of shards, which is rounded up to a power of two. The default is the number
+     * of available processors, which is likewise rounded up to a power of two.
+     */
+    public Builder<K, V> shards(int shards) {
+      if ((shards <= 0) || (shards > (1 << 16))) {
+        throw new IllegalArgumentException("shards must be in the range [1, 65536]: " + shards);
+      }
+      this.shards = Integer.highestOneBit(2 * shards - 1);
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of entries across all of the shards. Each shard is bounded by this
+     * maximum divided by the number of shards and rounded up, so the total capacity may exceed the
+     * maximum by up to one fewer entries than the number of shards.
+     */
+    public Builder<K, V> maximumSize(long maximumSize) {
+      if (maximumSize < 0) {
+        throw new IllegalArgumentException("maximum size must not be negative: " + maximumSize);
+      }
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /** See {@link Caffeine#executor(Executor)}. */
+    public Builder<K, V> executor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /** See {@link Caffeine#recordStats()}. */
+    public Builder<K, V> recordStats() {
+      this.recordStats = true;
+      return this;
+    }
+
+    /** Returns a cache whose entries are partitioned across independently maintained shards. */
+    public ShardedCache<K, V> build() {
+      if (maximumSize < 0) {
+        throw new IllegalStateException("maximumSize was not set");
+      }
+      return new ShardedCache<>(this);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.examples.sharded;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class ShardedCacheTest {
+
+  @Test
+  public void shards_powerOfTwo() {
+    var cache = new ShardedCache.Builder<Integer, Integer>().shards(5).maximumSize(100).build();
+    assertThat(cache.shards).hasLength(8);
+  }
+
+  @Test
+  public void shards_invalid() {
+    var builder = new ShardedCache.Builder<Integer, Integer>();
+    assertThrows(IllegalArgumentException.class, () -> builder.shards(0));
+    assertThrows(IllegalStateException.class, builder::build);
+  }
+
+  @Test
+  public void shardFor_distributes() {
+    var cache = newCache(/* shards= */ 4, /* maximumSize= */ 1_000);
+    var used = new HashSet<>();
+    for (int key = 0; key < 100; key++) {
+      var shard = cache.shardFor(key);
+      assertThat(cache.shardFor(key)).isSameInstanceAs(shard);
+      used.add(shard);
+    }
+    assertThat(used).hasSize(4);
+  }
+
+  @Test
+  public void getAndPut() {
+    var cache = newCache(/* shards= */ 4, /* maximumSize= */ 1_000);
+    assertThat(cache.get(1, key -> -key)).isEqualTo(-1);
+    cache.put(2, -2);
+
+    assertThat(cache.getIfPresent(1)).isEqualTo(-1);
+    assertThat(cache.getIfPresent(2)).isEqualTo(-2);
+    assertThat(cache.estimatedSize()).isEqualTo(2);
+    assertThat(cache.stats().hitCount()).isEqualTo(2);
+    assertThat(cache.stats().missCount()).isEqualTo(1);
+
+    cache.invalidate(1);
+    assertThat(cache.getIfPresent(1)).isNull();
+    cache.invalidateAll();
+    assertThat(cache.estimatedSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void evict_approximateMaximum() {
+    var cache = newCache(/* shards= */ 4, /* maximumSize= */ 100);
+    for (int key = 0; key < 1_000; key++) {
+      cache.put(key, key);
+    }
+    cache.cleanUp();
+    assertThat(cache.estimatedSize()).isAtMost(100);
+    assertThat(cache.stats().evictionCount()).isAtLeast(900);
+  }
+
+  private static ShardedCache<Integer, Integer> newCache(int shards, long maximumSize) {
+    return new ShardedCache.Builder<Integer, Integer>()
+        .maximumSize(maximumSize)
+        .executor(Runnable::run)
+        .shards(shards)
+        .recordStats()
+        .build();
+  }
+}
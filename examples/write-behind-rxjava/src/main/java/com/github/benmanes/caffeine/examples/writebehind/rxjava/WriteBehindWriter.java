@@ -0,0 +1,441 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.examples.writebehind.rxjava;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+
+/**
+ * A writer that propagates the cache's updates to an external resource asynchronously and in
+ * batches. Each update is buffered by its key, so that repeated writes to the same key are
+ * coalesced into a single write, and the buffered updates are passed to the {@code writeAction}
+ * once a batch is full or once its first update has waited for the maximum delay. The batches are
+ * written one at a time, in the order that they were formed, so that a later update to a key is
+ * never overwritten by an earlier one. Unlike {@link WriteBehindCacheWriter}, this does not
+ * require RxJava and it applies backpressure when the writes fall behind.
+ * <p>
+ * The writer is fed by the application's write path after the cache has been updated, for example:
+ * <pre>{@code
+ *   var writer = WriteBehindWriter.<K, V>newBuilder()
+ *       .writeAction(database::saveAll)
+ *       .maximumDelay(Duration.ofSeconds(1))
+ *       .build();
+ *   writer.accept(key, cache.asMap().merge(key, delta, V::add));
+ * }</pre>
+ * The writer should not be called from within a cache computation, as it may block to apply
+ * backpressure when the number of buffered keys has reached its limit.
+ * <p>
+ * Writing behind trades consistency for throughput: the external resource lags behind the cache,
+ * and the buffered updates are lost if the process terminates abruptly. An exception thrown by the
+ * {@code writeAction} is logged and the batch is discarded. The {@link #close} method writes all of
+ * the buffered updates and waits for them to complete, so it should be called on shutdown.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class WriteBehindWriter<K, V> implements BiConsumer<K, V>, AutoCloseable {
+  static final Logger logger = System.getLogger(WriteBehindWriter.class.getName());
+
+  final BinaryOperator<V> coalescer;
+  final Consumer<Map<K, V>> writeAction;
+  final long maximumDelayNanos;
+  final int maximumBatchSize;
+  final int maximumPending;
+  final Executor executor;
+
+  final ReentrantLock lock;
+  final Condition writable;
+
+  @GuardedBy("lock")
+  final ArrayDeque<Map<K, V>> batches;
+  @GuardedBy("lock")
+  Map<K, V> pending;
+  @GuardedBy("lock")
+  int buffered;
+  @GuardedBy("lock")
+  boolean writing;
+  @GuardedBy("lock")
+  boolean closed;
+
+  WriteBehindWriter(Builder<K, V> builder) {
+    this.maximumDelayNanos = builder.maximumDelayNanos;
+    this.maximumBatchSize = builder.maximumBatchSize;
+    this.maximumPending = builder.maximumPending;
+    this.writeAction = requireNonNull(builder.writeAction);
+    this.coalescer = builder.coalescer;
+    this.executor = builder.executor;
+    this.batches = new ArrayDeque<>();
+    this.pending = new LinkedHashMap<>();
+    this.lock = new ReentrantLock();
+    this.writable = lock.newCondition();
+  }
+
+  /**
+   * Constructs a new {@code Builder} for a writer with the default settings of a maximum batch size
+   * of 1,000 keys, a maximum delay of one second, at most 10,000 buffered keys, and a coalescing
+   * function that retains the latest value.
+   *
+   * @param <K> the type of keys
+   * @param <V> the type of values
+   * @return a new builder
+   */
+  public static <K, V> Builder<K, V> newBuilder() {
+    return new Builder<>();
+  }
+
+  /**
+   * Buffers the update to be written. If the key already has a buffered update then the values are
+   * combined by the coalescing function. If the maximum number of keys are buffered, then the
+   * calling thread waits until a batch has been written.
+   *
+   * @param key the key whose value was updated
+   * @param value the updated value
+   * @throws IllegalStateException if the writer was closed
+   * @throws NullPointerException if the key or value is null
+   */
+  @Override
+  public void accept(K key, V value) {
+    requireNonNull(key);
+    requireNonNull(value);
+
+    Runnable task = null;
+    Map<K, V> batch;
+    boolean isFirst;
+    lock.lock();
+    try {
+      while (!closed && (buffered >= maximumPending) && !pending.containsKey(key)) {
+        writable.awaitUninterruptibly();
+      }
+      if (closed) {
+        throw new IllegalStateException("writer was closed");
+      }
+
+      batch = pending;
+      isFirst = batch.isEmpty();
+      boolean isPresent = batch.containsKey(key);
+      if (batch.merge(key, value, coalescer) == null) {
+        if (isPresent) {
+          buffered--;
+          writable.signalAll();
+        }
+      } else if (!isPresent) {
+        buffered++;
+      }
+      if (batch.size() >= maximumBatchSize) {
+        task = enqueue();
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (task != null) {
+      execute(task);
+    } else if (isFirst) {
+      CompletableFuture.delayedExecutor(maximumDelayNanos, NANOSECONDS, this::execute)
+          .execute(() -> flush(batch));
+    }
+  }
+
+  /**
+   * Writes the buffered updates without waiting for the maximum delay. The writes are performed
+   * asynchronously.
+   */
+  public void flush() {
+    Runnable task;
+    lock.lock();
+    try {
+      task = enqueue();
+    } finally {
+      lock.unlock();
+    }
+    if (task != null) {
+      execute(task);
+    }
+  }
+
+  /**
+   * Writes the buffered updates and waits for them to complete. Any subsequent update is rejected.
+   * This method has no additional effect if the writer was already closed.
+   */
+  @Override
+  public void close() {
+    Runnable task;
+    lock.lock();
+    try {
+      closed = true;
+      task = enqueue();
+      writable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (task != null) {
+      execute(task);
+    }
+
+    lock.lock();
+    try {
+      while (buffered > 0) {
+        writable.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the approximate number of keys whose updates have not yet been written.
+   *
+   * @return the approximate number of buffered keys
+   */
+  public int pendingCount() {
+    lock.lock();
+    try {
+      return buffered;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Writes the batch if it is still being buffered once its maximum delay has elapsed. */
+  void flush(Map<K, V> batch) {
+    Runnable task = null;
+    lock.lock();
+    try {
+      if (pending == batch) {
+        task = enqueue();
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (task != null) {
+      execute(task);
+    }
+  }
+
+  /**
+   * Moves the buffered updates into the queue of batches to be written, returning the task that
+   * writes them if it is not already running.
+   */
+  @GuardedBy("lock")
+  Runnable enqueue() {
+    if (pending.isEmpty()) {
+      return null;
+    }
+    batches.add(Collections.unmodifiableMap(pending));
+    pending = new LinkedHashMap<>();
+    if (writing) {
+      return null;
+    }
+    writing = true;
+    return this::writeBatches;
+  }
+
+  /** Writes the queued batches in order until none remain. */
+  void writeBatches() {
+    for (;;) {
+      Map<K, V> batch;
+      lock.lock();
+      try {
+        batch = batches.poll();
+        if (batch == null) {
+          writing = false;
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      try {
+        writeAction.accept(batch);
+      } catch (Throwable t) {
+        logger.log(Level.WARNING, "Exception thrown by the write action", t);
+      } finally {
+        lock.lock();
+        try {
+          buffered -= batch.size();
+          writable.signalAll();
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  /** Submits the task to the executor, or runs it on the calling thread if rejected. */
+  void execute(Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (Throwable t) {
+      logger.log(Level.ERROR, "Exception thrown when submitting a write-behind task", t);
+      task.run();
+    }
+  }
+
+  /** A builder of {@link WriteBehindWriter} instances. */
+  public static final class Builder<K, V> {
+    static final long DEFAULT_MAXIMUM_DELAY_NANOS = Duration.ofSeconds(1).toNanos();
+    static final int DEFAULT_MAXIMUM_BATCH_SIZE = 1_000;
+    static final int DEFAULT_MAXIMUM_PENDING = 10_000;
+
+    Consumer<Map<K, V>> writeAction;
+    BinaryOperator<V> coalescer;
+    long maximumDelayNanos;
+    int maximumBatchSize;
+    int maximumPending;
+    Executor executor;
+
+    Builder() {
+      maximumDelayNanos = DEFAULT_MAXIMUM_DELAY_NANOS;
+      maximumBatchSize = DEFAULT_MAXIMUM_BATCH_SIZE;
+      maximumPending = DEFAULT_MAXIMUM_PENDING;
+      executor = ForkJoinPool.commonPool();
+      coalescer = (oldValue, newValue) -> newValue;
+    }
+
+    /**
+     * Specifies the action that writes a batch of updates to the external resource. The action is
+     * invoked by one thread at a time and receives an unmodifiable map of the keys to their latest
+     * values.
+     *
+     * @param writeAction the action that writes a batch of updates
+     * @return this {@code Builder} instance (for chaining)
+     * @throws IllegalStateException if the write action was already set
+     * @throws NullPointerException if the write action is null
+     */
+    @CanIgnoreReturnValue
+    public Builder<K, V> writeAction(Consumer<Map<K, V>> writeAction) {
+      if (this.writeAction != null) {
+        throw new IllegalStateException("write action was already set to " + this.writeAction);
+      }
+      this.writeAction = requireNonNull(writeAction);
+      return this;
+    }
+
+    /**
+     * Specifies the function that combines a buffered value with a subsequent update to the same
+     * key. If the function returns {@code null} then the buffered update is discarded. By default,
+     * the latest value is retained.
+     *
+     * @param coalescer the function that combines the buffered value and the updated value
+     * @return this {@code Builder} instance (for chaining)
+     * @throws NullPointerException if the coalescer is null
+     */
+    @CanIgnoreReturnValue
+    public Builder<K, V> coalesce(BinaryOperator<V> coalescer) {
+      this.coalescer = requireNonNull(coalescer);
+      return this;
+    }
+
+    /**
+     * Specifies the maximum number of keys that are written in a single batch.
+     *
+     * @param maximumBatchSize the maximum number of keys in a batch
+     * @return this {@code Builder} instance (for chaining)
+     * @throws IllegalArgumentException if {@code maximumBatchSize} is zero or negative
+     */
+    @CanIgnoreReturnValue
+    public Builder<K, V> maximumBatchSize(int maximumBatchSize) {
+      if (maximumBatchSize <= 0) {
+        throw new IllegalArgumentException("maximum batch size must be positive: "
+            + maximumBatchSize);
+      }
+      this.maximumBatchSize = maximumBatchSize;
+      return this;
+    }
+
+    /**
+     * Specifies the maximum time that an update is buffered before its batch is written.
+     *
+     * @param maximumDelay the maximum time that an update is buffered
+     * @return this {@code Builder} instance (for chaining)
+     * @throws IllegalArgumentException if {@code maximumDelay} is zero or negative
+     * @throws NullPointerException if the delay is null
+     */
+    @CanIgnoreReturnValue
+    public Builder<K, V> maximumDelay(Duration maximumDelay) {
+      if (maximumDelay.isNegative() || maximumDelay.isZero()) {
+        throw new IllegalArgumentException("maximum delay must be positive: " + maximumDelay);
+      }
+      this.maximumDelayNanos = maximumDelay.toNanos();
+      return this;
+    }
+
+    /**
+     * Specifies the maximum number of keys whose updates may be buffered before they are written.
+     * An update to a key that is not already buffered waits while this limit is reached, which
+     * applies backpressure to the writers when the external resource cannot keep up.
+     *
+     * @param maximumPending the maximum number of buffered keys
+     * @return this {@code Builder} instance (for chaining)
+     * @throws IllegalArgumentException if {@code maximumPending} is zero or negative
+     */
+    @CanIgnoreReturnValue
+    public Builder<K, V> maximumPending(int maximumPending) {
+      if (maximumPending <= 0) {
+        throw new IllegalArgumentException("maximum pending must be positive: " + maximumPending);
+      }
+      this.maximumPending = maximumPending;
+      return this;
+    }
+
+    /**
+     * Specifies the executor to use when writing the batches. By default,
+     * {@link ForkJoinPool#commonPool()} is used.
+     *
+     * @param executor the executor to use for writing the batches
+     * @return this {@code Builder} instance (for chaining)
+     * @throws NullPointerException if the executor is null
+     */
+    @CanIgnoreReturnValue
+    public Builder<K, V> executor(Executor executor) {
+      this.executor = requireNonNull(executor);
+      return this;
+    }
+
+    /**
+     * Returns a writer that buffers the updates and writes them in batches.
+     *
+     * @return a new writer
+     * @throws IllegalStateException if the write action was not set
+     */
+    public WriteBehindWriter<K, V> build() {
+      if (writeAction == null) {
+        throw new IllegalStateException("write action was not set");
+      }
+      return new WriteBehindWriter<>(this);
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2024 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.examples.writebehind.rxjava;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class WriteBehindWriterTest {
+
+  static final Executor directExecutor = Runnable::run;
+
+  @Test
+  public void builder_null() {
+    var builder = WriteBehindWriter.<Integer, Integer>newBuilder();
+    assertThrows(NullPointerException.class, () -> builder.writeAction(null));
+    assertThrows(NullPointerException.class, () -> builder.coalesce(null));
+    assertThrows(NullPointerException.class, () -> builder.maximumDelay(null));
+    assertThrows(NullPointerException.class, () -> builder.executor(null));
+  }
+
+  @Test
+  public void builder_invalid() {
+    var builder = WriteBehindWriter.<Integer, Integer>newBuilder();
+    assertThrows(IllegalArgumentException.class, () -> builder.maximumBatchSize(0));
+    assertThrows(IllegalArgumentException.class, () -> builder.maximumPending(0));
+    assertThrows(IllegalArgumentException.class, () -> builder.maximumDelay(Duration.ZERO));
+    assertThrows(IllegalStateException.class, builder::build);
+
+    builder.writeAction(batch -> {});
+    assertThrows(IllegalStateException.class, () -> builder.writeAction(batch -> {}));
+  }
+
+  @Test
+  public void accept_maximumBatchSize() {
+    var writes = new ConcurrentLinkedQueue<Map<Integer, Integer>>();
+    var writer = WriteBehindWriter.<Integer, Integer>newBuilder()
+        .maximumDelay(Duration.ofMinutes(1))
+        .executor(directExecutor)
+        .writeAction(writes::add)
+        .maximumBatchSize(3)
+        .build();
+    writer.accept(1, 1);
+    writer.accept(1, 2);
+    writer.accept(2, 1);
+    assertThat(writes, is(empty()));
+    assertThat(writer.pendingCount(), is(2));
+
+    writer.accept(3, 1);
+    assertThat(writes, contains(Map.of(1, 2, 2, 1, 3, 1)));
+    assertThat(writer.pendingCount(), is(0));
+  }
+
+  @Test
+  public void accept_maximumDelay() {
+    var writes = new ConcurrentLinkedQueue<Map<Integer, Integer>>();
+    var writer = WriteBehindWriter.<Integer, Integer>newBuilder()
+        .maximumDelay(Duration.ofMillis(1))
+        .writeAction(writes::add)
+        .build();
+    writer.accept(1, 1);
+    writer.accept(2, 2);
+    await().untilAsserted(() -> assertThat(writes, contains(Map.of(1, 1, 2, 2))));
+  }
+
+  @Test
+  public void accept_coalesce() {
+    var writes = new ConcurrentLinkedQueue<Map<Integer, Integer>>();
+    var writer = WriteBehindWriter.<Integer, Integer>newBuilder()
+        .maximumDelay(Duration.ofMinutes(1))
+        .executor(directExecutor)
+        .writeAction(writes::add)
+        .coalesce(Integer::sum)
+        .build();
+    for (int i = 1; i <= 10; i++) {
+      writer.accept(1, i);
+    }
+    writer.flush();
+    assertThat(writes, contains(Map.of(1, 55)));
+  }
+
+  @Test
+  public void accept_coalesceToNull() {
+    var writes = new ConcurrentLinkedQueue<Map<Integer, Integer>>();
+    var writer = WriteBehindWriter.<Integer, Integer>newBuilder()
+        .coalesce((oldValue, newValue) -> null)
+        .maximumDelay(Duration.ofMinutes(1))
+        .executor(directExecutor)
+        .writeAction(writes::add)
+        .build();
+    writer.accept(1, 1);
+    writer.accept(1, 2);
+    assertThat(writer.pendingCount(), is(0));
+
+    writer.flush();
+    assertThat(writes, is(empty()));
+  }
+
+  @Test
+  public void accept_backpressure() {
+    var latch = new CountDownLatch(1);
+    var writes = new ConcurrentLinkedQueue<Map<Integer, Integer>>();
+    var writer = WriteBehindWriter.<Integer, Integer>newBuilder()
+        .writeAction(batch -> {
+          awaitUninterruptibly(latch);
+          writes.add(batch);
+        })
+        .maximumDelay(Duration.ofMinutes(1))
+        .maximumBatchSize(1)
+        .maximumPending(2)
+        .build();
+    writer.accept(1, 1);
+    writer.accept(2, 2);
+
+    var blocked = new Thread(() -> writer.accept(3, 3));
+    blocked.start();
+    await().until(() -> blocked.getState() == Thread.State.WAITING);
+    assertThat(writer.pendingCount(), is(2));
+
+    latch.countDown();
+    await().until(() -> !blocked.isAlive());
+    await().untilAsserted(() -> assertThat(writes,
+        contains(Map.of(1, 1), Map.of(2, 2), Map.of(3, 3))));
+  }
+
+  @Test
+  public void writeAction_failure() {
+    var writes = new ConcurrentLinkedQueue<Map<Integer, Integer>>();
+    var writer = WriteBehindWriter.<Integer, Integer>newBuilder()
+        .writeAction(batch -> {
+          writes.add(batch);
+          throw new IllegalStateException();
+        })
+        .maximumDelay(Duration.ofMinutes(1))
+        .executor(directExecutor)
+        .maximumBatchSize(1)
+        .build();
+    writer.accept(1, 1);
+    writer.accept(2, 2);
+    assertThat(writes, contains(Map.of(1, 1), Map.of(2, 2)));
+    assertThat(writer.pendingCount(), is(0));
+  }
+
+  @Test
+  public void executor_rejected() {
+    var writes = new ConcurrentLinkedQueue<Map<Integer, Integer>>();
+    var writer = WriteBehindWriter.<Integer, Integer>newBuilder()
+        .executor(task -> { throw new IllegalStateException(); })
+        .maximumDelay(Duration.ofMinutes(1))
+        .writeAction(writes::add)
+        .maximumBatchSize(1)
+        .build();
+    writer.accept(1, 1);
+    assertThat(writes, contains(Map.of(1, 1)));
+  }
+
+  @Test
+  public void close() {
+    var writes = new ConcurrentLinkedQueue<Map<Integer, Integer>>();
+    var writer = WriteBehindWriter.<Integer, Integer>newBuilder()
+        .maximumDelay(Duration.ofMinutes(1))
+        .executor(ForkJoinPool.commonPool())
+        .writeAction(writes::add)
+        .build();
+    writer.accept(1, 1);
+    writer.accept(2, 2);
+    writer.close();
+
+    assertThat(writes, contains(Map.of(1, 1, 2, 2)));
+    assertThat(writer.pendingCount(), is(0));
+    assertThrows(IllegalStateException.class, () -> writer.accept(3, 3));
+
+    writer.close();
+    assertThat(writes.size(), is(1));
+  }
+
+  static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+    for (;;) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -227,7 +227,7 @@ public final class Registry {
   private void registerProduct() {
     register(GuavaPolicy.class, GuavaPolicy::new);
     register(Cache2kPolicy.class, Cache2kPolicy::new);
-    register(CaffeinePolicy.class, CaffeinePolicy::new);
+    registerMany(CaffeinePolicy.class, config -> CaffeinePolicy.policies(config, characteristics));
     register(Ehcache3Policy.class, Ehcache3Policy::new);
     registerMany(TCachePolicy.class, TCachePolicy::policies);
     registerMany(CoherencePolicy.class, CoherencePolicy::policies);
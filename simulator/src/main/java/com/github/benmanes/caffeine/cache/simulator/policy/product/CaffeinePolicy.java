@@ -16,7 +16,9 @@
 package com.github.benmanes.caffeine.cache.simulator.policy.product;
 
 import static com.github.benmanes.caffeine.cache.simulator.policy.Policy.Characteristic.WEIGHTED;
+import static java.util.stream.Collectors.toUnmodifiableSet;
 
+import java.util.EnumSet;
 import java.util.Set;
 
 import org.jspecify.annotations.Nullable;
@@ -29,6 +31,7 @@ import com.github.benmanes.caffeine.cache.simulator.policy.AccessEvent;
 import com.github.benmanes.caffeine.cache.simulator.policy.Policy;
 import com.github.benmanes.caffeine.cache.simulator.policy.Policy.PolicySpec;
 import com.github.benmanes.caffeine.cache.simulator.policy.PolicyStats;
+import com.google.common.base.CaseFormat;
 import com.google.common.primitives.Ints;
 import com.typesafe.config.Config;
 
@@ -42,9 +45,9 @@ public final class CaffeinePolicy implements Policy {
   private final Cache<Long, AccessEvent> cache;
   private final PolicyStats policyStats;
 
-  public CaffeinePolicy(Config config, Set<Characteristic> characteristics) {
-    policyStats = new PolicyStats(name());
-    var settings = new BasicSettings(config);
+  public CaffeinePolicy(CaffeineSettings settings,
+      Set<Characteristic> characteristics, Sketch sketch) {
+    policyStats = new PolicyStats(name() + " (%s)", sketch);
     Caffeine<Long, AccessEvent> builder = Caffeine.newBuilder()
         .removalListener((@Nullable Long key, @Nullable AccessEvent value, RemovalCause cause) ->
             policyStats.recordEviction())
@@ -56,9 +59,23 @@ public final class CaffeinePolicy implements Policy {
       builder.maximumSize(settings.maximumSize());
       builder.initialCapacity(Ints.saturatedCast(settings.maximumSize()));
     }
+    if (sketch.compact) {
+      builder.compactFrequencySketch();
+    }
+    if (sketch.doorkeeper) {
+      builder.frequencySketchDoorkeeper();
+    }
     cache = builder.build();
   }
 
+  /** Returns all variations of this policy based on the configuration parameters. */
+  public static Set<Policy> policies(Config config, Set<Characteristic> characteristics) {
+    var settings = new CaffeineSettings(config);
+    return settings.sketch().stream()
+        .map(sketch -> new CaffeinePolicy(settings, characteristics, sketch))
+        .collect(toUnmodifiableSet());
+  }
+
   @Override
   public void record(AccessEvent event) {
     AccessEvent value = cache.getIfPresent(event.key());
@@ -77,4 +94,46 @@ public final class CaffeinePolicy implements Policy {
   public PolicyStats stats() {
     return policyStats;
   }
+
+  public static final class CaffeineSettings extends BasicSettings {
+    public CaffeineSettings(Config config) {
+      super(config);
+    }
+    public Set<Sketch> sketch() {
+      var sketches = EnumSet.noneOf(Sketch.class);
+      for (var sketch : config().getStringList("caffeine.sketch")) {
+        if (sketch.equalsIgnoreCase("standard")) {
+          sketches.add(Sketch.STANDARD);
+        } else if (sketch.equalsIgnoreCase("compact")) {
+          sketches.add(Sketch.COMPACT);
+        } else if (sketch.equalsIgnoreCase("doorkeeper")) {
+          sketches.add(Sketch.DOORKEEPER);
+        } else if (sketch.equalsIgnoreCase("compact-doorkeeper")) {
+          sketches.add(Sketch.COMPACT_DOORKEEPER);
+        } else {
+          throw new IllegalArgumentException("Unknown sketch: " + sketch);
+        }
+      }
+      return sketches;
+    }
+  }
+
+  public enum Sketch {
+    STANDARD(/* compact= */ false, /* doorkeeper= */ false),
+    COMPACT(/* compact= */ true, /* doorkeeper= */ false),
+    DOORKEEPER(/* compact= */ false, /* doorkeeper= */ true),
+    COMPACT_DOORKEEPER(/* compact= */ true, /* doorkeeper= */ true);
+
+    final boolean doorkeeper;
+    final boolean compact;
+
+    Sketch(boolean compact, boolean doorkeeper) {
+      this.doorkeeper = doorkeeper;
+      this.compact = compact;
+    }
+
+    @Override public String toString() {
+      return CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.UPPER_CAMEL, name());
+    }
+  }
 }